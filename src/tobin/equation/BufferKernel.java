@@ -0,0 +1,29 @@
+package tobin.equation;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A fitness loop generated for one equation by the <tt>KernelGenerator</tt>,
+ * like <tt>EquationKernel</tt>, that reads the data from DoubleBuffers
+ * instead of arrays, so the data can be kept outside of the heap.
+ * @author Tobin
+ * @version 1
+ */
+public interface BufferKernel
+{
+    /**
+     * Computes the sum of the squared differences between the equation and
+     * each data point in a range of the data.  The buffers are only read with
+     * absolute gets, so one buffer can be used by many threads at once.
+     * @param registers The values of the variables, indexed by their slots in
+     * the variable map
+     * @param columns The columns of the program the kernel was generated
+     * from, with the value of each one at every data point in the buffers
+     * @param inputs The input columns of the data, x1, x2, and so on
+     * @param ys The y value of each data point
+     * @param start The index in the buffers of the first data point to use
+     * @param end The index in the buffers after the last data point to use
+     * @return The total squared error over the range
+     */
+    public double sumSquaredError(double registers[], DoubleBuffer columns[], DoubleBuffer inputs[], DoubleBuffer ys, int start, int end);
+}
@@ -0,0 +1,94 @@
+package tobin.equation;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import tobin.equation.ends.Input;
+import tobin.equation.ends.Value;
+import tobin.equation.ends.Variable;
+import tobin.equation.operators.BinaryOperator;
+import tobin.equation.operators.UnaryOperator;
+
+/**
+ * Turns an equation tree into a graph where every piece of the equation that
+ * appears more than once is the same node.  Two subtrees are the same if they
+ * are the same type of operator with the same function and the same
+ * children, the same value, or the same variable.  For example in
+ * $a*sin($w*x)+$b*sin($w*x) both of the sin($w*x) become one node with two
+ * parents.<br>
+ * The graph has the same value and prints the same as the tree.  When it is
+ * compiled into an <tt>EquationProgram</tt> each shared node is evaluated
+ * once per data point, and its value is reused by its other parents.
+ * @author Tobin
+ * @version 1
+ */
+public class CommonSubexpressions
+{
+    private final HashMap<String, Node> nodes = new HashMap<String, Node>();
+    private final IdentityHashMap<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+
+    private CommonSubexpressions()
+    {
+    }
+    /**
+     * Gets a copy of the given equation with all of the repeated subtrees
+     * shared.  The equation passed in is not changed.
+     * @param n The equation
+     * @return The equation graph
+     */
+    public static Node share(Node n)
+    {
+        return new CommonSubexpressions().canonical(n);
+    }
+    /**
+     * Gets the one node that stands for every subtree equal to the given one.
+     * @param n The subtree
+     * @return The shared node
+     */
+    private Node canonical(Node n)
+    {
+        n.validityCheck();
+        String key;
+        Node copy;
+        if(n instanceof Value)
+        {
+            key = "value " + Double.doubleToLongBits(n.getValue());
+            copy = n;
+        }
+        else if(n instanceof Variable)
+        {
+            key = "variable " + ((Variable)n).getSlot();
+            copy = n;
+        }
+        else if(n instanceof Input)
+        {
+            key = "input " + ((Input)n).getColumn();
+            copy = n;
+        }
+        else if(n instanceof UnaryOperator)
+        {
+            Node a = canonical(n.getChildren()[0]);
+            key = n.getClass().getName() + " " + ((UnaryOperator)n).getFunction() + " " + ids.get(a);
+            copy = ((UnaryOperator)n).getInstance(a);
+        }
+        else if(n instanceof BinaryOperator)
+        {
+            Node a = canonical(n.getChildren()[0]);
+            Node b = canonical(n.getChildren()[1]);
+            key = n.getClass().getName() + " " + ids.get(a) + " " + ids.get(b);
+            copy = ((BinaryOperator)n).getInstance(a, b);
+        }
+        else
+        {
+            return n;
+        }
+
+        Node shared = nodes.get(key);
+        if(shared == null)
+        {
+            shared = copy;
+            nodes.put(key, shared);
+            ids.put(shared, ids.size());
+        }
+        return shared;
+    }
+}
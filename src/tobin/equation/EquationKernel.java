@@ -0,0 +1,26 @@
+package tobin.equation;
+
+/**
+ * A fitness loop generated for one equation by the <tt>KernelGenerator</tt>.
+ * The whole sum of squared error is computed in one method, so the JIT can
+ * compile the equation and the loop over the data together.
+ * @author Tobin
+ * @version 1
+ */
+public interface EquationKernel
+{
+    /**
+     * Computes the sum of the squared differences between the equation and
+     * each data point in a range of the data.
+     * @param registers The values of the variables, indexed by their slots in
+     * the variable map
+     * @param columns The columns of the program the kernel was generated
+     * from, with the value of each one at every data point
+     * @param inputs The input columns of the data, x1, x2, and so on
+     * @param ys The y value of each data point
+     * @param start The index of the first data point to use
+     * @param end The index after the last data point to use
+     * @return The total squared error over the range
+     */
+    public double sumSquaredError(double registers[], double columns[][], double inputs[][], double ys[], int start, int end);
+}
@@ -0,0 +1,389 @@
+package tobin.equation;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import tobin.equation.ends.Column;
+import tobin.equation.ends.Input;
+import tobin.equation.ends.Value;
+import tobin.equation.ends.Variable;
+import tobin.equation.operators.BinaryOperator;
+import tobin.equation.operators.IntegerPower;
+import tobin.equation.operators.UnaryOperator;
+
+/**
+ * A node tree flattened into a postfix program.  Walking the tree costs a
+ * virtual call and a validity check for every node on every data point, so
+ * before the algorithm starts the tree is compiled into an array of opcodes
+ * and an array of constants, which KernelGenerator turns into a class.<br>
+ * The values and variables are the only instructions with an operand.  The
+ * operand follows the opcode in the code array, and is the index of the
+ * constant, or the slot of the variable in the variable map, that the
+ * instruction pushes onto the stack.  COLUMN pushes the value of a
+ * <tt>Column</tt> at the current data point, and its operand is the index of
+ * the column in the program.  INPUT pushes the value of an input column of
+ * the data at the current data point, and its operand is the index of the
+ * input.  INTEGER_POWER raises the top of the stack to the power of its
+ * operand.  Every other instruction pops its operands off of the stack and
+ * pushes the result.<br>
+ * If the equation is a graph made by <tt>CommonSubexpressions</tt>, a node
+ * with more than one parent is only compiled once.  STORE copies its value
+ * from the top of the stack into a temporary, and each later use of the node
+ * is a LOAD of that temporary.  The index of the temporary is the operand of
+ * the instruction, and the kernel keeps each one in a local variable.
+ * @author Tobin
+ * @version 1
+ */
+public class EquationProgram
+{
+    public static final int VALUE = 0, VARIABLE = 1;
+    public static final int NEGATIVE = 2, ABSOLUTE_VALUE = 3, SIN = 4, COS = 5,
+            TAN = 6, ARCSIN = 7, ARCCOS = 8, ARCTAN = 9, LN = 10, LOG = 11;
+    public static final int ADD = 12, SUBTRACT = 13, MULTIPLY = 14,
+            DIVIDE = 15, MOD = 16, POWER = 17;
+    public static final int STORE = 18, LOAD = 19, COLUMN = 20;
+    public static final int SQUARE = 21, CUBE = 22, RECIPROCAL = 23,
+            SQUARE_ROOT = 24, INTEGER_POWER = 25, INPUT = 26;
+
+    private final int code[];
+    private final double constants[];
+    private final double columns[][];
+    private final int registerCount, inputCount;
+    private final int stackSize, temporaryCount;
+    /**
+     * Makes a new program.  Programs are made by the compile method.
+     * @param code The opcodes and operands of the program
+     * @param constants The values pushed by the VALUE instructions
+     * @param columns The values of the columns read by the COLUMN
+     * instructions
+     * @param registerCount One more than the highest slot read by the
+     * VARIABLE instructions
+     * @param inputCount One more than the highest input read by the INPUT
+     * instructions
+     * @param stackSize The deepest the stack gets while running the program
+     * @param temporaryCount The number of temporaries used by the STORE and
+     * LOAD instructions
+     */
+    private EquationProgram(int code[], double constants[], double columns[][], int registerCount, int inputCount, int stackSize, int temporaryCount)
+    {
+        this.code = code;
+        this.constants = constants;
+        this.columns = columns;
+        this.registerCount = registerCount;
+        this.inputCount = inputCount;
+        this.stackSize = stackSize;
+        this.temporaryCount = temporaryCount;
+    }
+    /**
+     * Compiles the given equation into a program.  The equation is not
+     * changed, and the program has no references to it.
+     * @param equation The equation to compile, which may be a tree or a graph
+     * with shared nodes
+     * @return The program that computes the same value as the equation
+     */
+    public static EquationProgram compile(Node equation)
+    {
+        Compiler c = new Compiler();
+        c.countReferences(equation);
+        c.emit(equation);
+
+        int code[] = new int[c.code.size()];
+        for (int i = 0; i < code.length; i++)
+        {
+            code[i] = c.code.get(i);
+        }
+        double constants[] = new double[c.constants.size()];
+        for (int i = 0; i < constants.length; i++)
+        {
+            constants[i] = c.constants.get(i);
+        }
+
+        double columns[][] = c.columns.toArray(new double[0][]);
+
+        return new EquationProgram(code, constants, columns, c.registerCount, c.inputCount, c.maxDepth, c.temporaries.size());
+    }
+    /**
+     * Gets the deepest the stack gets while running this program.
+     * @return The stack size
+     */
+    public int getStackSize()
+    {
+        return stackSize;
+    }
+    /**
+     * Gets the number of temporaries used to hold the values of shared nodes.
+     * @return The temporary count
+     */
+    public int getTemporaryCount()
+    {
+        return temporaryCount;
+    }
+    /**
+     * Returns if the given opcode is followed by an operand in the code
+     * array.
+     * @param opcode The opcode
+     * @return If the instruction has an operand
+     */
+    public static boolean hasOperand(int opcode)
+    {
+        return opcode == VALUE || opcode == VARIABLE || opcode == STORE || opcode == LOAD || opcode == COLUMN || opcode == INPUT || opcode == INTEGER_POWER;
+    }
+    /**
+     * Gets the number of registers this program reads, which is one more than
+     * the highest slot of any variable in it.
+     * @return The register count
+     */
+    public int getRegisterCount()
+    {
+        return registerCount;
+    }
+    /**
+     * Gets the number of input columns this program reads, which is one more
+     * than the highest input in it.
+     * @return The input count
+     */
+    public int getInputCount()
+    {
+        return inputCount;
+    }
+    /**
+     * Returns if the program reads the given register.
+     * @param slot The slot of the variable
+     * @return If any VARIABLE instruction reads that slot
+     */
+    public boolean usesRegister(int slot)
+    {
+        for (int pc = 0; pc < code.length; pc++)
+        {
+            if(code[pc] == VARIABLE && code[pc + 1] == slot)
+            {
+                return true;
+            }
+            if(hasOperand(code[pc]))
+            {
+                pc++;
+            }
+        }
+        return false;
+    }
+    /**
+     * Returns if the program reads the given input column.
+     * @param column The index of the input
+     * @return If any INPUT instruction reads that column
+     */
+    public boolean usesInput(int column)
+    {
+        for (int pc = 0; pc < code.length; pc++)
+        {
+            if(code[pc] == INPUT && code[pc + 1] == column)
+            {
+                return true;
+            }
+            if(hasOperand(code[pc]))
+            {
+                pc++;
+            }
+        }
+        return false;
+    }
+    /**
+     * Gets the opcodes and operands of this program.  Not a copy, so only the
+     * kernel generator uses it.
+     * @return The code array
+     */
+    int[] getCode()
+    {
+        return code;
+    }
+    /**
+     * Gets the values pushed by the VALUE instructions.  Not a copy, so only
+     * the kernel generator uses it.
+     * @return The constant pool
+     */
+    double[] getConstants()
+    {
+        return constants;
+    }
+    /**
+     * Gets the values of the columns read by the COLUMN instructions, which
+     * are passed to the generated kernel.  Not a copy, so the columns must not
+     * be changed.
+     * @return The columns
+     */
+    public double[][] getColumns()
+    {
+        return columns;
+    }
+    /**
+     * Gets a listing of the instructions in this program, one per line.
+     * @return The listing
+     */
+    @Override
+    public String toString()
+    {
+        String out = "";
+        for (int pc = 0; pc < code.length; pc++)
+        {
+            if(code[pc] == VALUE)
+            {
+                out += "VALUE "+constants[code[++pc]]+"\n";
+            }
+            else if(code[pc] == VARIABLE)
+            {
+                out += "VARIABLE "+code[++pc]+"\n";
+            }
+            else if(code[pc] == STORE)
+            {
+                out += "STORE "+code[++pc]+"\n";
+            }
+            else if(code[pc] == LOAD)
+            {
+                out += "LOAD "+code[++pc]+"\n";
+            }
+            else if(code[pc] == COLUMN)
+            {
+                out += "COLUMN "+code[++pc]+"\n";
+            }
+            else if(code[pc] == INPUT)
+            {
+                out += "INPUT "+code[++pc]+"\n";
+            }
+            else if(code[pc] == INTEGER_POWER)
+            {
+                out += "INTEGER_POWER "+code[++pc]+"\n";
+            }
+            else
+            {
+                out += code[pc]+"\n";
+            }
+        }
+        return out;
+    }
+    /**
+     * Collects the instructions while walking the tree.
+     */
+    private static class Compiler
+    {
+        private ArrayList<Integer> code = new ArrayList<Integer>();
+        private ArrayList<Double> constants = new ArrayList<Double>();
+        private ArrayList<double[]> columns = new ArrayList<double[]>();
+        private IdentityHashMap<Node, Integer> references = new IdentityHashMap<Node, Integer>();
+        private IdentityHashMap<Node, Integer> temporaries = new IdentityHashMap<Node, Integer>();
+        private int registerCount = 0, inputCount = 0;
+        private int depth = 0, maxDepth = 0;
+        /**
+         * Counts the number of parents of every node, so the compiler knows
+         * which nodes are shared.
+         * @param n The node to count the children of
+         */
+        private void countReferences(Node n)
+        {
+            Integer count = references.get(n);
+            references.put(n, count == null ? 1 : count + 1);
+            if(count == null)
+            {
+                for(Node child : n.getChildren())
+                {
+                    countReferences(child);
+                }
+            }
+        }
+        /**
+         * Adds the instructions for the given node, children first.  A shared
+         * operator is stored in a temporary the first time, and loaded from
+         * it every time after that.
+         * @param n The node to compile
+         */
+        private void emit(Node n)
+        {
+            n.validityCheck();
+            boolean shared = references.get(n) > 1 && n.getChildren().length > 0;
+            if(shared && temporaries.containsKey(n))
+            {
+                code.add(LOAD);
+                code.add(temporaries.get(n));
+                push();
+                return;
+            }
+
+            emitNode(n);
+
+            if(shared)
+            {
+                temporaries.put(n, temporaries.size());
+                code.add(STORE);
+                code.add(temporaries.get(n));
+            }
+        }
+        /**
+         * Adds the instructions for the given node itself.
+         * @param n The node to compile
+         */
+        private void emitNode(Node n)
+        {
+            if(n instanceof Value)
+            {
+                code.add(VALUE);
+                code.add(constants.size());
+                constants.add(n.getValue());
+                push();
+            }
+            else if(n instanceof Variable)
+            {
+                int slot = ((Variable)n).getSlot();
+                registerCount = Math.max(registerCount, slot + 1);
+                code.add(VARIABLE);
+                code.add(slot);
+                push();
+            }
+            else if(n instanceof Input)
+            {
+                int column = ((Input)n).getColumn();
+                inputCount = Math.max(inputCount, column + 1);
+                code.add(INPUT);
+                code.add(column);
+                push();
+            }
+            else if(n instanceof Column)
+            {
+                double values[] = ((Column)n).getValues();
+                int index = columns.indexOf(values);
+                if(index < 0)
+                {
+                    index = columns.size();
+                    columns.add(values);
+                }
+                code.add(COLUMN);
+                code.add(index);
+                push();
+            }
+            else if(n instanceof UnaryOperator)
+            {
+                emit(n.getChildren()[0]);
+                code.add(((UnaryOperator)n).getOpcode());
+                if(n instanceof IntegerPower)
+                {
+                    code.add(((IntegerPower)n).getExponent());
+                }
+            }
+            else if(n instanceof BinaryOperator)
+            {
+                emit(n.getChildren()[0]);
+                emit(n.getChildren()[1]);
+                code.add(((BinaryOperator)n).getOpcode());
+                depth--;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Can not compile node: "+n);
+            }
+        }
+        /**
+         * Records that an instruction pushed a value onto the stack.
+         */
+        private void push()
+        {
+            depth++;
+            maxDepth = Math.max(depth, maxDepth);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package tobin.equation;
+
+import java.util.ArrayList;
+
+/**
+ * Holds everything that changes while an equation is evaluated: the value of
+ * every variable, indexed by slot, the input columns of the data and the
+ * index of the data point being evaluated, and the scratch arrays used by
+ * block evaluation.  The equation itself is never changed while it is
+ * evaluated, so one equation can be evaluated by many threads at once, as
+ * long as each thread has its own context.  A context must only be used by
+ * one thread at a time.
+ * @author Tobin
+ * @version 1
+ */
+public class EvaluationContext
+{
+    private final double registers[];
+    private double inputs[][];
+    private int row;
+    private final ArrayList<double[]> scratch = new ArrayList<double[]>();
+    private int scratchUsed = 0;
+    /**
+     * Makes a new context with the given registers.  The array is used as is,
+     * not copied.
+     * @param registers The value of every variable, indexed by slot, usually
+     * from <tt>VariableMap.newRegisters</tt>
+     */
+    public EvaluationContext(double registers[])
+    {
+        this.registers = registers;
+    }
+    /**
+     * Gets the value of the variable in the given slot.
+     * @param slot The slot of the variable
+     * @return The value
+     */
+    public double getRegister(int slot)
+    {
+        return registers[slot];
+    }
+    /**
+     * Sets the value of the variable in the given slot.
+     * @param slot The slot of the variable
+     * @param value The new value
+     */
+    public void setRegister(int slot, double value)
+    {
+        registers[slot] = value;
+    }
+    /**
+     * Gets the registers of this context.  This is not a copy.
+     * @return The value of every variable, indexed by slot
+     */
+    public double[] getRegisters()
+    {
+        return registers;
+    }
+    /**
+     * Sets the input columns of the data, x1, x2, and so on, which are read
+     * at the current row.  The arrays are used as is, not copied.
+     * @param inputs The input columns
+     */
+    public void setInputs(double inputs[][])
+    {
+        this.inputs = inputs;
+    }
+    /**
+     * Gets the value of the given input column at the current row.
+     * @param column The index of the column, starting at 0 for x1
+     * @return The value
+     */
+    public double getInput(int column)
+    {
+        return inputs[column][row];
+    }
+    /**
+     * Gets the index of the data point being evaluated, which is used by the
+     * inputs and by the parts of the equation that are computed ahead of
+     * time.
+     * @return The current row
+     */
+    public int getRow()
+    {
+        return row;
+    }
+    /**
+     * Sets the index of the data point being evaluated.
+     * @param row The current row
+     */
+    public void setRow(int row)
+    {
+        this.row = row;
+    }
+    /**
+     * Gets a scratch array of at least the given length that is not being used
+     * by anything else.  Scratch arrays are used like a stack, so the array
+     * must be given back with releaseScratch before any array that was taken
+     * before it is given back.  The arrays are kept and reused, so after the
+     * first block no more are made.
+     * @param length The length needed
+     * @return The scratch array
+     */
+    public double[] takeScratch(int length)
+    {
+        if(scratchUsed == scratch.size())
+        {
+            scratch.add(new double[length]);
+        }
+        else if(scratch.get(scratchUsed).length < length)
+        {
+            scratch.set(scratchUsed, new double[length]);
+        }
+        return scratch.get(scratchUsed++);
+    }
+    /**
+     * Gives back the last scratch array that was taken.
+     */
+    public void releaseScratch()
+    {
+        scratchUsed--;
+    }
+}
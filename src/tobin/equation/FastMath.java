@@ -0,0 +1,261 @@
+package tobin.equation;
+
+/**
+ * Approximations of the functions in java.lang.Math that the generated
+ * kernels call when fast math is turned on.  Each one uses a small table and
+ * a short polynomial instead of the exact algorithm, so it is not rounded
+ * correctly, but the error is small enough that candidates are still ranked
+ * the same way, except for candidates whose fitness is almost equal.  A zero
+ * answer may lose its sign.<br>
+ * The error bounds, measured against java.lang.Math over millions of random
+ * arguments, with some room left over, are:<br>
+ * sin, cos: absolute error below 5e-16.  Near a zero the relative error can
+ * be much bigger, because x itself is only known to the nearest double.
+ * Math is used for |x| &gt; 1e5.<br>
+ * tan: absolute error below 5e-16 * (1 + tan(x)^2), which is the error of
+ * the sin and cos carried through the division, so the relative error is
+ * only big near the zeros and the poles.<br>
+ * atan: absolute error below 5e-16.<br>
+ * asin, acos: absolute error below 1e-15.<br>
+ * log, log10: relative error below 1e-15, including close to 1.<br>
+ * There is no fast exp or pow, since the Math versions are intrinsics that
+ * were as fast or faster when they were measured.
+ * @author Tobin
+ * @version 1
+ */
+public class FastMath
+{
+    private static final int SIN_BITS = 10, SIN_SIZE = 1 << SIN_BITS;
+    private static final double SIN_TABLE[] = new double[SIN_SIZE];
+    private static final double SIN_STEP = 2 * Math.PI / SIN_SIZE;
+    private static final double SIN_STEP_HIGH, SIN_STEP_LOW;
+    private static final double SIN_MAX = 1e5;
+    private static final double TWO_PI_LOW = 2.4492935982947064e-16;
+
+    private static final int ATAN_SIZE = 32;
+    private static final double ATAN_TABLE[] = new double[ATAN_SIZE + 1];
+
+    private static final int LOG_BITS = 8, LOG_SIZE = 1 << LOG_BITS;
+    private static final double LOG_TABLE[] = new double[LOG_SIZE * 3 / 2 + 1];
+    private static final double LOG10_TABLE[] = new double[LOG_SIZE * 3 / 2 + 1];
+    private static final double LOG_POINT[] = new double[LOG_SIZE * 3 / 2 + 1];
+    private static final double LOG_INVERSE[] = new double[LOG_SIZE * 3 / 2 + 1];
+    private static final long SQRT2_CARRY = (1L << 52) - (Double.doubleToLongBits(Math.sqrt(2)) & 0x000fffffffffffffL);
+    private static final double LN2_HIGH = 0.6931471803691238, LN2_LOW = 1.9082149292705877e-10;
+    private static final double LOG10_2_HIGH = 0.3010299950838089, LOG10_2_LOW = 5.801722962879576e-10;
+    private static final double LN10_INVERSE = 1 / Math.log(10);
+
+    static
+    {
+        //only the first quarter is computed, and the rest is mirrored from
+        //it, so the zeros of the table are exactly zero
+        for (int i = 0; i <= SIN_SIZE / 4; i++)
+        {
+            double quarter = Math.sin(i * SIN_STEP);
+            SIN_TABLE[i] = quarter;
+            SIN_TABLE[SIN_SIZE / 2 - i] = quarter;
+            SIN_TABLE[SIN_SIZE / 2 + i] = -quarter;
+            SIN_TABLE[(SIN_SIZE - i) & (SIN_SIZE - 1)] = -quarter;
+        }
+        SIN_TABLE[0] = 0;
+        //the step split in two, so k * high is exact for any k below 2^26
+        SIN_STEP_HIGH = Double.longBitsToDouble(Double.doubleToLongBits(SIN_STEP) & 0xfffffffffc000000L);
+        SIN_STEP_LOW = SIN_STEP - SIN_STEP_HIGH + TWO_PI_LOW / SIN_SIZE;
+        for (int i = 0; i <= ATAN_SIZE; i++)
+        {
+            ATAN_TABLE[i] = Math.atan(i / (double)ATAN_SIZE);
+        }
+        for (int i = LOG_SIZE / 2; i < LOG_TABLE.length; i++)
+        {
+            double m = i / (double)LOG_SIZE;
+            LOG_TABLE[i] = Math.log(m);
+            LOG10_TABLE[i] = Math.log10(m);
+            LOG_POINT[i] = m;
+            LOG_INVERSE[i] = 1 / m;
+        }
+    }
+
+    private FastMath()
+    {
+    }
+    /**
+     * Approximates the sin of x.  x is moved to the nearest point in a table
+     * of 1024 points around the circle, and the rest of the angle is added
+     * with the angle sum identity, using short Taylor series for the sin and
+     * cos of the small angle that is left over.
+     * @param x The angle, in radians
+     * @return The sin of x
+     */
+    public static double sin(double x)
+    {
+        if(!(Math.abs(x) <= SIN_MAX))
+        {
+            return Math.sin(x);
+        }
+        long k = Math.round(x / SIN_STEP);
+        double d = (x - k * SIN_STEP_HIGH) - k * SIN_STEP_LOW;
+        int i = (int)(k & (SIN_SIZE - 1));
+        double d2 = d * d;
+        double sinD = d * (1 - d2 * (1 / 6.0 - d2 * (1 / 120.0)));
+        double cosD = 1 - d2 * (0.5 - d2 * (1 / 24.0 - d2 * (1 / 720.0)));
+        return SIN_TABLE[i] * cosD + SIN_TABLE[(i + SIN_SIZE / 4) & (SIN_SIZE - 1)] * sinD;
+    }
+    /**
+     * Approximates the cos of x, the same way as sin.
+     * @param x The angle, in radians
+     * @return The cos of x
+     */
+    public static double cos(double x)
+    {
+        if(!(Math.abs(x) <= SIN_MAX))
+        {
+            return Math.cos(x);
+        }
+        long k = Math.round(x / SIN_STEP);
+        double d = (x - k * SIN_STEP_HIGH) - k * SIN_STEP_LOW;
+        int i = (int)(k & (SIN_SIZE - 1));
+        double d2 = d * d;
+        double sinD = d * (1 - d2 * (1 / 6.0 - d2 * (1 / 120.0)));
+        double cosD = 1 - d2 * (0.5 - d2 * (1 / 24.0 - d2 * (1 / 720.0)));
+        return SIN_TABLE[(i + SIN_SIZE / 4) & (SIN_SIZE - 1)] * cosD - SIN_TABLE[i] * sinD;
+    }
+    /**
+     * Approximates the tan of x as its sin over its cos.
+     * @param x The angle, in radians
+     * @return The tan of x
+     */
+    public static double tan(double x)
+    {
+        if(!(Math.abs(x) <= SIN_MAX))
+        {
+            return Math.tan(x);
+        }
+        long k = Math.round(x / SIN_STEP);
+        double d = (x - k * SIN_STEP_HIGH) - k * SIN_STEP_LOW;
+        int i = (int)(k & (SIN_SIZE - 1));
+        double d2 = d * d;
+        double sinD = d * (1 - d2 * (1 / 6.0 - d2 * (1 / 120.0)));
+        double cosD = 1 - d2 * (0.5 - d2 * (1 / 24.0 - d2 * (1 / 720.0)));
+        double sinI = SIN_TABLE[i], cosI = SIN_TABLE[(i + SIN_SIZE / 4) & (SIN_SIZE - 1)];
+        return (sinI * cosD + cosI * sinD) / (cosI * cosD - sinI * sinD);
+    }
+    /**
+     * Approximates the arctan of x.  Arguments bigger than 1 use
+     * atan(x) = pi/2 - atan(1/x).  Then x is moved to the nearest of 33
+     * points between 0 and 1, and the rest is added with the difference
+     * identity, atan(x) = atan(c) + atan((x - c)/(1 + xc)), where the second
+     * part is small enough for a short Taylor series.
+     * @param x The tangent
+     * @return The angle, between -pi/2 and pi/2
+     */
+    public static double atan(double x)
+    {
+        if(x != x)
+        {
+            return x;
+        }
+        boolean negative = x < 0;
+        double a = Math.abs(x);
+        boolean inverted = a > 1;
+        if(inverted)
+        {
+            a = 1 / a;
+        }
+        int i = (int)(a * ATAN_SIZE + 0.5);
+        double c = i / (double)ATAN_SIZE;
+        double t = (a - c) / (1 + a * c);
+        double t2 = t * t;
+        double out = ATAN_TABLE[i] + t * (1 - t2 * (1 / 3.0 - t2 * (1 / 5.0 - t2 * (1 / 7.0))));
+        if(inverted)
+        {
+            out = Math.PI / 2 - out;
+        }
+        return negative ? -out : out;
+    }
+    /**
+     * Approximates the arcsin of x as atan(x / sqrt(1 - x^2)).
+     * @param x The sin, between -1 and 1
+     * @return The angle, between -pi/2 and pi/2, or NaN if x is out of range
+     */
+    public static double asin(double x)
+    {
+        if(!(Math.abs(x) <= 1))
+        {
+            return Double.NaN;
+        }
+        return atan(x / Math.sqrt((1 - x) * (1 + x)));
+    }
+    /**
+     * Approximates the arccos of x as pi/2 - asin(x).
+     * @param x The cos, between -1 and 1
+     * @return The angle, between 0 and pi, or NaN if x is out of range
+     */
+    public static double acos(double x)
+    {
+        if(!(Math.abs(x) <= 1))
+        {
+            return Double.NaN;
+        }
+        return Math.PI / 2 - atan(x / Math.sqrt((1 - x) * (1 + x)));
+    }
+    /**
+     * Approximates the natural log of x.  x is split into its exponent and a
+     * mantissa between 1/sqrt(2) and sqrt(2), and the mantissa is moved to
+     * the nearest of the points 1/256 apart, so that numbers close to 1 use
+     * the point 1 itself and there is nothing to cancel.  The log of what is
+     * left over, which is within 1/362 of 1, is found with a short Taylor
+     * series.  Zero, negative numbers, subnormal numbers, infinity and NaN
+     * use Math.log.
+     * @param x The number
+     * @return The natural log of x
+     */
+    public static double log(double x)
+    {
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int)(bits >>> 52);
+        if(exponent == 0 || exponent >= 0x7ff)
+        {
+            return Math.log(x);
+        }
+        return log(bits, LOG_TABLE, LN2_HIGH, LN2_LOW, 1);
+    }
+    /**
+     * Approximates the base 10 log of x, the same way as the natural log, but
+     * with a table of base 10 logs, so it is not rounded twice.
+     * @param x The number
+     * @return The base 10 log of x
+     */
+    public static double log10(double x)
+    {
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int)(bits >>> 52);
+        if(exponent == 0 || exponent >= 0x7ff)
+        {
+            return Math.log10(x);
+        }
+        return log(bits, LOG10_TABLE, LOG10_2_HIGH, LOG10_2_LOW, LN10_INVERSE);
+    }
+    /**
+     * Finds the log of a positive normal number in any base.
+     * @param bits The bits of the number
+     * @param table The logs of the points, in the base
+     * @param high The log of 2 in the base, with its low bits cleared
+     * @param low The rest of the log of 2
+     * @param scale The inverse of the natural log of the base
+     * @return The log
+     */
+    private static double log(long bits, double table[], double high, double low, double scale)
+    {
+        //half is 1 if the mantissa is at least sqrt(2), and then it is halved,
+        //without a branch, since it is a coin flip for random arguments
+        long mantissa = bits & 0x000fffffffffffffL;
+        int half = (int)((mantissa + SQRT2_CARRY) >>> 52);
+        int exponent = (int)(bits >>> 52) - 1023 + half;
+        double m = Double.longBitsToDouble(mantissa | (long)(0x3ff - half) << 52);
+        int i = (int)(m * LOG_SIZE + 0.5);
+        //m and the point are within a factor of 2, so the difference is exact
+        double r = (m - LOG_POINT[i]) * LOG_INVERSE[i];
+        double poly = r - r * r * (0.5 - r * (1 / 3.0 - r * (0.25 - r * (0.2 - r * (1 / 6.0)))));
+        return exponent * high + (table[i] + (exponent * low + poly * scale));
+    }
+}
@@ -0,0 +1,587 @@
+package tobin.equation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Generates a JVM class that computes the fitness loop for one equation.  The
+ * class implements <tt>EquationKernel</tt>, and its only method copies the
+ * registers into local variables, and then loops over the data, running the
+ * instructions of the program inline as bytecode.  Nothing is looked up while
+ * the loop runs, so the JIT can keep everything in registers.<br>
+ * A kernel can also be generated for data that is kept outside of the heap.
+ * It implements <tt>BufferKernel</tt> instead, and reads the inputs, the y
+ * values and the columns with DoubleBuffer.get instead of from arrays, which
+ * the JIT turns into a plain memory read.<br>
+ * The class file is written by hand, so there is no need for a bytecode
+ * library.  It uses version 49 of the class file format, which is verified by
+ * type inference, so no stack map frames have to be written.<br>
+ * The local variables of the generated method are laid out as:<br>
+ * 0 this, 1 registers, 2 columns, 3 inputs, 4 ys, 5 start, 6 end, 7 i, 8 sum,
+ * 10 and up the registers, two slots each, in the same order as the variable
+ * map, then the temporaries of the program, then one slot for each column,
+ * then one slot for each input column, and then two slots of scratch space.
+ * @author Tobin
+ * @version 1
+ */
+public class KernelGenerator
+{
+    private static final String INTERFACE = "tobin/equation/EquationKernel",
+            BUFFER_INTERFACE = "tobin/equation/BufferKernel",
+            DOUBLE_BUFFER = "java/nio/DoubleBuffer";
+    private static final int REGISTERS = 1, COLUMNS = 2, INPUTS = 3, YS = 4,
+            START = 5, END = 6, INDEX = 7, SUM = 8, FIRST_REGISTER = 10;
+    private static int kernelCount = 0;
+
+    private final EquationProgram program;
+    private final boolean fastMath, buffers;
+    private final ArrayList<byte[]> pool = new ArrayList<byte[]>();
+    private final HashMap<String, Integer> poolIndexes = new HashMap<String, Integer>();
+    private int poolSize = 1;
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream code = new DataOutputStream(codeBytes);
+    /**
+     * Makes a generator for the given program.  Generators are used once, by
+     * the generate method.
+     * @param program The program to generate a kernel for
+     * @param fastMath If the kernel should call FastMath instead of Math
+     * @param buffers If the kernel should read DoubleBuffers instead of
+     * arrays
+     */
+    private KernelGenerator(EquationProgram program, boolean fastMath, boolean buffers)
+    {
+        this.program = program;
+        this.fastMath = fastMath;
+        this.buffers = buffers;
+    }
+    /**
+     * Generates, loads, and instantiates a kernel for the given program,
+     * which uses the exact functions in java.lang.Math.
+     * @param program The compiled equation
+     * @return The kernel
+     * @throws IllegalStateException if the class could not be generated or
+     * loaded, for example if the equation is too big to fit in one method
+     */
+    public static EquationKernel generate(EquationProgram program)
+    {
+        return generate(program, false);
+    }
+    /**
+     * Generates, loads, and instantiates a kernel for the given program.
+     * @param program The compiled equation
+     * @param fastMath If the trig functions and logs should use the
+     * approximations in FastMath instead of java.lang.Math
+     * @return The kernel
+     * @throws IllegalStateException if the class could not be generated or
+     * loaded, for example if the equation is too big to fit in one method
+     */
+    public static EquationKernel generate(EquationProgram program, boolean fastMath)
+    {
+        return (EquationKernel)generate(program, fastMath, false);
+    }
+    /**
+     * Generates, loads, and instantiates a kernel for the given program that
+     * reads its data from DoubleBuffers.
+     * @param program The compiled equation
+     * @param fastMath If the trig functions and logs should use the
+     * approximations in FastMath instead of java.lang.Math
+     * @return The kernel
+     * @throws IllegalStateException if the class could not be generated or
+     * loaded, for example if the equation is too big to fit in one method
+     */
+    public static BufferKernel generateBuffered(EquationProgram program, boolean fastMath)
+    {
+        return (BufferKernel)generate(program, fastMath, true);
+    }
+    /**
+     * Generates, loads, and instantiates either kind of kernel.
+     */
+    private static Object generate(EquationProgram program, boolean fastMath, boolean buffers)
+    {
+        String name;
+        synchronized(KernelGenerator.class)
+        {
+            name = "tobin/equation/GeneratedKernel" + kernelCount++;
+        }
+
+        try
+        {
+            byte classFile[] = new KernelGenerator(program, fastMath, buffers).writeClass(name);
+            Class<?> c = new KernelLoader().define(name.replace('/', '.'), classFile);
+            return c.getDeclaredConstructor().newInstance();
+        }
+        catch(IOException ioe)
+        {
+            throw new IllegalStateException("Could not write kernel: "+ioe);
+        }
+        catch(LinkageError le)
+        {
+            throw new IllegalStateException("Could not load kernel: "+le);
+        }
+        catch(InvocationTargetException ite)
+        {
+            throw new IllegalStateException("Could not make kernel: "+ite.getCause());
+        }
+        catch(Exception e)
+        {
+            //no constructor, or it could not be called
+            throw new IllegalStateException("Could not make kernel: "+e);
+        }
+    }
+    /**
+     * Writes the whole class file.
+     * @param name The internal name of the class
+     * @return The bytes of the class file
+     * @throws IOException never, because everything is written to memory
+     */
+    private byte[] writeClass(String name) throws IOException
+    {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int kernelInterface = classRef(buffers ? BUFFER_INTERFACE : INTERFACE);
+        int codeName = utf8("Code");
+
+        byte init[] = writeConstructor(superClass);
+        byte loop[] = writeLoop();
+        int maxStack = 2 * program.getStackSize() + 6;
+        int maxLocals = scratch() + 2;
+
+        int initName = utf8("<init>"), initType = utf8("()V");
+        int loopName = utf8("sumSquaredError"), loopType = utf8(buffers
+                ? "([D[L"+DOUBLE_BUFFER+";[L"+DOUBLE_BUFFER+";L"+DOUBLE_BUFFER+";II)D"
+                : "([D[[D[[D[DII)D");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        for(byte entry[] : pool)
+        {
+            out.write(entry);
+        }
+        out.writeShort(0x0031);//public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(kernelInterface);
+        out.writeShort(0);//fields
+        out.writeShort(2);//methods
+        writeMethod(out, initName, initType, codeName, 1, 1, init);
+        writeMethod(out, loopName, loopType, codeName, maxStack, maxLocals, loop);
+        out.writeShort(0);//attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+    /**
+     * Writes a public method with a Code attribute.
+     */
+    private static void writeMethod(DataOutputStream out, int name, int type, int codeName, int maxStack, int maxLocals, byte body[]) throws IOException
+    {
+        if(body.length > 65535)
+        {
+            throw new IllegalStateException("Method too long: "+body.length);
+        }
+        out.writeShort(0x0001);
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0);//exception table
+        out.writeShort(0);//attributes
+    }
+    /**
+     * Writes the code of the constructor, which only calls Object().
+     */
+    private byte[] writeConstructor(int superClass) throws IOException
+    {
+        int init = methodRef(superClass, "<init>", "()V");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(0x2a);//aload_0
+        out.writeByte(0xb7);//invokespecial
+        out.writeShort(init);
+        out.writeByte(0xb1);//return
+        out.flush();
+        return bytes.toByteArray();
+    }
+    /**
+     * Writes the code of the fitness loop.
+     */
+    private byte[] writeLoop() throws IOException
+    {
+        int registers = program.getRegisterCount();
+        for (int i = 0; i < registers; i++)
+        {
+            if(program.usesRegister(i))
+            {
+                local(0x19, REGISTERS);//aload
+                pushInt(i);
+                code.writeByte(0x31);//daload
+                local(0x39, FIRST_REGISTER + 2 * i);//dstore
+            }
+        }
+        for (int i = 0; i < program.getColumns().length; i++)
+        {
+            local(0x19, COLUMNS);//aload
+            pushInt(i);
+            code.writeByte(0x32);//aaload
+            local(0x3a, firstColumn() + i);//astore
+        }
+        for (int i = 0; i < program.getInputCount(); i++)
+        {
+            if(program.usesInput(i))
+            {
+                local(0x19, INPUTS);//aload
+                pushInt(i);
+                code.writeByte(0x32);//aaload
+                local(0x3a, firstInput() + i);//astore
+            }
+        }
+        code.writeByte(0x0e);//dconst_0
+        local(0x39, SUM);//dstore
+        local(0x15, START);//iload
+        local(0x36, INDEX);//istore
+
+        int loopStart = code.size();
+        local(0x15, INDEX);//iload
+        local(0x15, END);//iload
+        int exitJump = code.size();
+        code.writeByte(0xa2);//if_icmpge
+        code.writeShort(0);//patched below
+
+        loadElement(YS);//the y value
+        writeEquation();
+        code.writeByte(0x67);//dsub
+        code.writeByte(0x5c);//dup2
+        code.writeByte(0x6b);//dmul
+        local(0x18, SUM);//dload
+        code.writeByte(0x63);//dadd
+        local(0x39, SUM);//dstore
+        code.writeByte(0x84);//iinc
+        code.writeByte(INDEX);
+        code.writeByte(1);
+        int gotoAt = code.size();
+        code.writeByte(0xa7);//goto
+        code.writeShort(loopStart - gotoAt);
+
+        int loopEnd = code.size();
+        local(0x18, SUM);//dload
+        code.writeByte(0xaf);//dreturn
+        code.flush();
+
+        byte out[] = codeBytes.toByteArray();
+        int offset = loopEnd - exitJump;
+        if(offset > Short.MAX_VALUE || loopStart - gotoAt < Short.MIN_VALUE)
+        {
+            throw new IllegalStateException("Loop too long: "+offset);
+        }
+        out[exitJump + 1] = (byte)(offset >> 8);
+        out[exitJump + 2] = (byte)offset;
+        return out;
+    }
+    /**
+     * Translates each instruction of the program into bytecode.  The operand
+     * stack of the JVM is used as the stack of the program.
+     */
+    private void writeEquation() throws IOException
+    {
+        int ops[] = program.getCode();
+        double constants[] = program.getConstants();
+        int firstTemporary = FIRST_REGISTER + 2 * program.getRegisterCount();
+        for (int pc = 0; pc < ops.length; pc++)
+        {
+            switch(ops[pc])
+            {
+                case EquationProgram.VALUE:
+                    code.writeByte(0x14);//ldc2_w
+                    code.writeShort(doubleConstant(constants[ops[++pc]]));
+                    break;
+                case EquationProgram.VARIABLE:
+                    local(0x18, FIRST_REGISTER + 2 * ops[++pc]);//dload
+                    break;
+                case EquationProgram.COLUMN:
+                    loadElement(firstColumn() + ops[++pc]);
+                    break;
+                case EquationProgram.INPUT:
+                    loadElement(firstInput() + ops[++pc]);
+                    break;
+                case EquationProgram.STORE:
+                    code.writeByte(0x5c);//dup2
+                    local(0x39, firstTemporary + 2 * ops[++pc]);//dstore
+                    break;
+                case EquationProgram.LOAD:
+                    local(0x18, firstTemporary + 2 * ops[++pc]);//dload
+                    break;
+                case EquationProgram.NEGATIVE:
+                    code.writeByte(0x77);//dneg
+                    break;
+                case EquationProgram.ABSOLUTE_VALUE:
+                    math("abs", 1);
+                    break;
+                case EquationProgram.SIN:
+                    transcendental("sin", 1);
+                    break;
+                case EquationProgram.COS:
+                    transcendental("cos", 1);
+                    break;
+                case EquationProgram.TAN:
+                    transcendental("tan", 1);
+                    break;
+                case EquationProgram.ARCSIN:
+                    transcendental("asin", 1);
+                    break;
+                case EquationProgram.ARCCOS:
+                    transcendental("acos", 1);
+                    break;
+                case EquationProgram.ARCTAN:
+                    transcendental("atan", 1);
+                    break;
+                case EquationProgram.LN:
+                    transcendental("log", 1);
+                    break;
+                case EquationProgram.LOG:
+                    transcendental("log10", 1);
+                    break;
+                case EquationProgram.SQUARE:
+                    code.writeByte(0x5c);//dup2
+                    code.writeByte(0x6b);//dmul
+                    break;
+                case EquationProgram.CUBE:
+                    code.writeByte(0x5c);//dup2
+                    code.writeByte(0x5c);//dup2
+                    code.writeByte(0x6b);//dmul
+                    code.writeByte(0x6b);//dmul
+                    break;
+                case EquationProgram.RECIPROCAL:
+                    local(0x39, scratch());//dstore
+                    code.writeByte(0x0f);//dconst_1
+                    local(0x18, scratch());//dload
+                    code.writeByte(0x6f);//ddiv
+                    break;
+                case EquationProgram.SQUARE_ROOT:
+                    code.writeByte(0xb8);//invokestatic
+                    code.writeShort(methodRef(classRef("tobin/equation/operators/SquareRoot"), "squareRoot", "(D)D"));
+                    break;
+                case EquationProgram.INTEGER_POWER:
+                    pushInt(ops[++pc]);
+                    code.writeByte(0xb8);//invokestatic
+                    code.writeShort(methodRef(classRef("tobin/equation/operators/IntegerPower"), "power", "(DI)D"));
+                    break;
+                case EquationProgram.ADD:
+                    code.writeByte(0x63);//dadd
+                    break;
+                case EquationProgram.SUBTRACT:
+                    code.writeByte(0x67);//dsub
+                    break;
+                case EquationProgram.MULTIPLY:
+                    code.writeByte(0x6b);//dmul
+                    break;
+                case EquationProgram.DIVIDE:
+                    code.writeByte(0x6f);//ddiv
+                    break;
+                case EquationProgram.MOD:
+                    code.writeByte(0x73);//drem
+                    break;
+                case EquationProgram.POWER:
+                    math("pow", 2);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: "+ops[pc]);
+            }
+        }
+    }
+    /**
+     * Writes the instructions that push the value at the current index of
+     * the array, or buffer, in the given local variable.
+     */
+    private void loadElement(int local) throws IOException
+    {
+        local(0x19, local);//aload
+        local(0x15, INDEX);//iload
+        if(buffers)
+        {
+            code.writeByte(0xb6);//invokevirtual
+            code.writeShort(methodRef(classRef(DOUBLE_BUFFER), "get", "(I)D"));
+        }
+        else
+        {
+            code.writeByte(0x31);//daload
+        }
+    }
+    /**
+     * Gets the local variable that holds the first column.
+     */
+    private int firstColumn()
+    {
+        return FIRST_REGISTER + 2 * (program.getRegisterCount() + program.getTemporaryCount());
+    }
+    /**
+     * Gets the local variable that holds the first input column.
+     */
+    private int firstInput()
+    {
+        return firstColumn() + program.getColumns().length;
+    }
+    /**
+     * Gets the local variable used as scratch space.
+     */
+    private int scratch()
+    {
+        return firstInput() + program.getInputCount();
+    }
+    /**
+     * Writes a call to a static method of java.lang.Math that takes the given
+     * number of doubles and returns a double.
+     */
+    private void math(String name, int arguments) throws IOException
+    {
+        String type = arguments == 1 ? "(D)D" : "(DD)D";
+        code.writeByte(0xb8);//invokestatic
+        code.writeShort(methodRef(classRef("java/lang/Math"), name, type));
+    }
+    /**
+     * Writes a call to a function that has an approximation in FastMath.  It
+     * calls FastMath if this kernel uses fast math, and Math if it does not.
+     */
+    private void transcendental(String name, int arguments) throws IOException
+    {
+        if(!fastMath)
+        {
+            math(name, arguments);
+            return;
+        }
+        String type = arguments == 1 ? "(D)D" : "(DD)D";
+        code.writeByte(0xb8);//invokestatic
+        code.writeShort(methodRef(classRef("tobin/equation/FastMath"), name, type));
+    }
+    /**
+     * Writes an instruction that takes a local variable index, using the wide
+     * form if the index does not fit in a byte.
+     */
+    private void local(int opcode, int index) throws IOException
+    {
+        if(index > 255)
+        {
+            code.writeByte(0xc4);//wide
+            code.writeByte(opcode);
+            code.writeShort(index);
+        }
+        else
+        {
+            code.writeByte(opcode);
+            code.writeByte(index);
+        }
+    }
+    /**
+     * Writes the shortest instruction that pushes the given int.
+     */
+    private void pushInt(int value) throws IOException
+    {
+        if(value >= -1 && value <= 5)
+        {
+            code.writeByte(0x03 + value);//iconst_n
+        }
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            code.writeByte(0x10);//bipush
+            code.writeByte(value);
+        }
+        else
+        {
+            code.writeByte(0x11);//sipush
+            code.writeShort(value);
+        }
+    }
+    /**
+     * Adds an entry to the constant pool, unless the same entry is already
+     * there.
+     * @param key Identifies the entry
+     * @param entry The bytes of the entry
+     * @param slots 2 for doubles, 1 for everything else
+     * @return The index of the entry
+     */
+    private int addEntry(String key, byte entry[], int slots)
+    {
+        Integer index = poolIndexes.get(key);
+        if(index == null)
+        {
+            index = poolSize;
+            pool.add(entry);
+            poolIndexes.put(key, index);
+            poolSize += slots;
+        }
+        return index;
+    }
+
+    private int utf8(String s)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(1);
+            out.writeUTF(s);
+            return addEntry("utf8 "+s, bytes.toByteArray(), 1);
+        }
+        catch(IOException ioe)
+        {
+            throw new IllegalStateException(ioe.toString());
+        }
+    }
+
+    private int classRef(String name)
+    {
+        int nameIndex = utf8(name);
+        return addEntry("class "+name, new byte[]{7, (byte)(nameIndex >> 8), (byte)nameIndex}, 1);
+    }
+
+    private int methodRef(int classIndex, String name, String type)
+    {
+        int nameIndex = utf8(name), typeIndex = utf8(type);
+        int nameAndType = addEntry("nat "+name+" "+type, new byte[]{12,
+                (byte)(nameIndex >> 8), (byte)nameIndex,
+                (byte)(typeIndex >> 8), (byte)typeIndex}, 1);
+        return addEntry("method "+classIndex+" "+name+" "+type, new byte[]{10,
+                (byte)(classIndex >> 8), (byte)classIndex,
+                (byte)(nameAndType >> 8), (byte)nameAndType}, 1);
+    }
+
+    private int doubleConstant(double value)
+    {
+        long bits = Double.doubleToRawLongBits(value);
+        byte entry[] = new byte[9];
+        entry[0] = 6;
+        for (int i = 0; i < 8; i++)
+        {
+            entry[8 - i] = (byte)(bits >> (8 * i));
+        }
+        return addEntry("double "+bits, entry, 2);
+    }
+    /**
+     * Loads the generated classes.  Each kernel gets its own loader so the
+     * class can be unloaded when the kernel is no longer used.
+     */
+    private static class KernelLoader extends ClassLoader
+    {
+        private KernelLoader()
+        {
+            super(EquationKernel.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte classFile[])
+        {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+}
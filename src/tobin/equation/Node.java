@@ -72,10 +72,37 @@ public abstract class Node implements Cloneable
     /**
      * Gets the numerical value of this node.  This will call getValue() of
      * all of the children of this node, and then perform the operation that
-     * defines the node.
+     * defines the node.  The variables are read from the given context, and
+     * nothing in the node is changed, so many threads can evaluate the same
+     * equation at once with their own contexts.
+     * @param c The values of the variables, and the current data point
      * @return The value of this node.
      */
-    public abstract double getValue();
+    public abstract double getValue(EvaluationContext c);
+    /**
+     * Gets the numerical value of a node that does not depend on any
+     * variables, like a part of the equation made only of numbers.
+     * @return The value of this node.
+     */
+    public double getValue()
+    {
+        return getValue(new EvaluationContext(new double[0]));
+    }
+    /**
+     * Gets the numerical value of this node for a block of data points at
+     * once.  Each node evaluates its children into arrays, and then performs
+     * its operation over the whole block in one loop, so there is only one
+     * call per node per block instead of one per node per data point.  The
+     * variables are read once for the whole block.
+     * @param c The values of the variables, and the scratch space for the
+     * block
+     * @param inputs The input columns of all of the data points
+     * @param offset The index in the columns of the first point in the block
+     * @param length The number of points in the block
+     * @param out Where to put the value at each point.  The value for the
+     * point at offset + i is put in out[i].
+     */
+    public abstract void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[]);
     /**
      * Gets a copy of this node.
      * @return The copy.
@@ -0,0 +1,184 @@
+package tobin.equation;
+
+import tobin.equation.ends.Value;
+import tobin.equation.ends.Variable;
+import tobin.equation.operators.Add;
+import tobin.equation.operators.BinaryOperator;
+import tobin.equation.operators.Cube;
+import tobin.equation.operators.Divide;
+import tobin.equation.operators.IntegerPower;
+import tobin.equation.operators.Multiply;
+import tobin.equation.operators.Negative;
+import tobin.equation.operators.Power;
+import tobin.equation.operators.Reciprocal;
+import tobin.equation.operators.Square;
+import tobin.equation.operators.SquareRoot;
+import tobin.equation.operators.Subtract;
+import tobin.equation.operators.UnaryOperator;
+import tobin.genetic.VariableMap;
+
+/**
+ * Simplifies a parsed equation before the algorithm starts, so that every
+ * node it removes is one less node to evaluate on every data point of every
+ * candidate.  The tree is simplified from the bottom up:<br>
+ * 1. pi and e are replaced by their values.<br>
+ * 2. Any operator whose operands are all values is replaced by its value.<br>
+ * 3. Identities are removed: a*1, 1*a, a+0, 0+a, a-0, a/1, a^1 become a, 0-a
+ * becomes -a, a^0 becomes 1, and --a becomes a.<br>
+ * 4. A power with a constant exponent that has a faster way to compute it is
+ * replaced by a specialized node: a^2 by <tt>Square</tt>, a^3 by
+ * <tt>Cube</tt>, a^-1 by <tt>Reciprocal</tt>, a^0.5 by <tt>SquareRoot</tt>,
+ * and any other whole number power by <tt>IntegerPower</tt>.<br>
+ * The equation that is passed in is not changed, so it can still be shown to
+ * the user as they wrote it.
+ * @author Tobin
+ * @version 1
+ */
+public class Simplifier
+{
+    private Simplifier()
+    {
+    }
+    /**
+     * Gets a simplified copy of the given equation.  The copy has the same
+     * value as the original, except that a specialized power may round
+     * differently than Math.pow in the last bit, and a zero may lose its
+     * sign.  A square root gives the same value as Math.pow for every input,
+     * including -0 and -infinity.
+     * @param n The equation to simplify
+     * @return The simplified equation
+     */
+    public static Node simplify(Node n)
+    {
+        n.validityCheck();
+        if(n instanceof Variable)
+        {
+            int slot = ((Variable)n).getSlot();
+            if(slot == VariableMap.PI_SLOT)
+            {
+                return new Value(Math.PI);
+            }
+            else if(slot == VariableMap.E_SLOT)
+            {
+                return new Value(Math.E);
+            }
+            return n;
+        }
+        else if(n instanceof UnaryOperator)
+        {
+            Node a = simplify(n.getChildren()[0]);
+            if(a instanceof Value)
+            {
+                return new Value(((UnaryOperator)n).getInstance(a).getValue());
+            }
+            if(n instanceof Negative && a instanceof Negative)
+            {
+                return a.getChildren()[0];
+            }
+            return ((UnaryOperator)n).getInstance(a);
+        }
+        else if(n instanceof BinaryOperator)
+        {
+            Node a = simplify(n.getChildren()[0]);
+            Node b = simplify(n.getChildren()[1]);
+            BinaryOperator out = ((BinaryOperator)n).getInstance(a, b);
+            if(a instanceof Value && b instanceof Value)
+            {
+                return new Value(out.getValue());
+            }
+            return simplifyIdentities(out);
+        }
+        return n.clone();
+    }
+    /**
+     * Removes the identities listed in the class description from a binary
+     * operator whose operands have already been simplified.
+     * @param n The operator
+     * @return The simplified node, or the same operator if nothing could be
+     * removed
+     */
+    private static Node simplifyIdentities(BinaryOperator n)
+    {
+        Node a = n.getPrimaryOperand(), b = n.getSecondaryOperand();
+        if(n instanceof Multiply)
+        {
+            if(isValue(b, 1))
+            {
+                return a;
+            }
+            if(isValue(a, 1))
+            {
+                return b;
+            }
+        }
+        else if(n instanceof Add)
+        {
+            if(isValue(b, 0))
+            {
+                return a;
+            }
+            if(isValue(a, 0))
+            {
+                return b;
+            }
+        }
+        else if(n instanceof Subtract)
+        {
+            if(isValue(b, 0))
+            {
+                return a;
+            }
+            if(isValue(a, 0))
+            {
+                return simplify(new Negative(b));
+            }
+        }
+        else if(n instanceof Divide)
+        {
+            if(isValue(b, 1))
+            {
+                return a;
+            }
+        }
+        else if(n instanceof Power && b instanceof Value)
+        {
+            double exponent = b.getValue();
+            if(exponent == 0)
+            {
+                return new Value(1);
+            }
+            if(exponent == 1)
+            {
+                return a;
+            }
+            if(exponent == 2)
+            {
+                return new Square(a);
+            }
+            if(exponent == 3)
+            {
+                return new Cube(a);
+            }
+            if(exponent == -1)
+            {
+                return new Reciprocal(a);
+            }
+            if(exponent == 0.5)
+            {
+                return new SquareRoot(a);
+            }
+            if(exponent == (int)exponent && Math.abs(exponent) <= IntegerPower.MAX_EXPONENT)
+            {
+                return new IntegerPower(a, (int)exponent);
+            }
+        }
+        return n;
+    }
+    /**
+     * Returns if the node is a value equal to the given number.
+     */
+    private static boolean isValue(Node n, double value)
+    {
+        return n instanceof Value && n.getValue() == value;
+    }
+}
@@ -0,0 +1,85 @@
+package tobin.equation.ends;
+
+import java.util.Arrays;
+import tobin.equation.EvaluationContext;
+import tobin.equation.IllegalChildCountException;
+import tobin.equation.Node;
+
+/**
+ * Stands in for a part of the equation that only depends on the data, like
+ * x^2 or sin(x).  The value of that part at every data point is computed once
+ * before the algorithm starts, and stored in this node, so evaluating this
+ * node is only an array read.  This node never has any children, and prints
+ * as the part of the equation it replaced.
+ * @author Tobin
+ * @version 1
+ */
+public class Column extends Node
+{
+    private final Node source;
+    private final double values[];
+    /**
+     * Makes a new column.
+     * @param source The part of the equation the values were computed from
+     * @param values The value of the source at each data point
+     */
+    public Column(Node source, double values[])
+    {
+        super();
+        this.source = source;
+        this.values = values;
+    }
+    /**
+     * Gets the value at the data point currently being evaluated.
+     * @param c The context that holds the index of the current data point
+     * @return The value at the current row
+     */
+    public double getValue(EvaluationContext c)
+    {
+        return values[c.getRow()];
+    }
+    /**
+     * Copies the values of the block.
+     */
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        System.arraycopy(values, offset, out, 0, length);
+    }
+    /**
+     * Gets the values at every data point.  This is not a copy.
+     * @return The values
+     */
+    public double[] getValues()
+    {
+        return values;
+    }
+    /**
+     * Gets the part of the equation this column replaced.
+     * @return The source of the values
+     */
+    public Node getSource()
+    {
+        return source;
+    }
+    /**
+     * Columns are never changed, so this returns the same column.
+     * @return This column
+     */
+    public Node clone()
+    {
+        return this;
+    }
+
+    public void validityCheck()
+    {
+        if(getChildren().length != 0)
+        {
+            throw new IllegalChildCountException("Column with children: "+this+", "+Arrays.toString(getChildren()));
+        }
+    }
+
+    public String toString()
+    {
+        return source.toString();
+    }
+}
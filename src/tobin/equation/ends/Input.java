@@ -0,0 +1,77 @@
+package tobin.equation.ends;
+
+import java.util.Arrays;
+import tobin.equation.EvaluationContext;
+import tobin.equation.IllegalChildCountException;
+import tobin.equation.Node;
+
+/**
+ * One of the input columns of the data, x1, x2, and so on, where x is the
+ * same as x1.  The value is read straight from the column at the data point
+ * being evaluated, so nothing is copied into the variable map for each
+ * point.  This node never has any children.
+ * @author Tobin
+ * @version 1
+ */
+public class Input extends Node
+{
+    private final String key;
+    private final int column;
+    /**
+     * Makes a new input.
+     * @param key The name of the input, as it was written in the equation
+     * @param column The index of the input column, starting at 0 for x1
+     */
+    public Input(String key, int column)
+    {
+        super();
+        this.key = key;
+        this.column = column;
+    }
+    /**
+     * Gets the value of this input at the data point currently being
+     * evaluated.
+     * @param c The context that holds the input columns and the current row
+     * @return The value at the current row
+     */
+    public double getValue(EvaluationContext c)
+    {
+        return c.getInput(column);
+    }
+    /**
+     * Copies the values of the block from the input column.
+     */
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        System.arraycopy(inputs[column], offset, out, 0, length);
+    }
+    /**
+     * Gets the index of the input column this reads.
+     * @return The column, starting at 0 for x1
+     */
+    public int getColumn()
+    {
+        return column;
+    }
+    /**
+     * Inputs are never changed, so this returns the same input.
+     * @return This input
+     */
+    public Node clone()
+    {
+        return this;
+    }
+
+    public void validityCheck()
+    {
+        if(getChildren().length != 0)
+        {
+            throw new IllegalChildCountException("Input with children: "+this+", "+Arrays.toString(getChildren()));
+        }
+    }
+
+    public String toString()
+    {
+        return key;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import tobin.equation.EquationPiece;
+import tobin.equation.EvaluationContext;
 import tobin.equation.IllegalChildCountException;
 import tobin.equation.Node;
 import tobin.equation.PartialEquation;
@@ -37,6 +38,19 @@ public class Value extends Node
         return value;
     }
 
+    public double getValue(EvaluationContext c)
+    {
+        return value;
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = value;
+        }
+    }
+
     public String toString()
     {
         return value+"";
@@ -4,42 +4,77 @@ import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import tobin.equation.EquationPiece;
+import tobin.equation.EvaluationContext;
 import tobin.equation.IllegalChildCountException;
 import tobin.equation.Node;
 import tobin.equation.PartialEquation;
+import tobin.equation.SyntaxException;
 import tobin.genetic.VariableMap;
 
 /**
  * It does not have a fixed value in the equation.  It will return the current
  * value when asked to evaluate itself, however that value can change.  The
- * value it returns is stored in the variable map, which this has a reference
- * to.  This element of the equation tree never has any children.  The key to
- * the hash map is the same as the variable name.
+ * value it returns is stored in the context it is evaluated in.  This element
+ * of the equation tree never has any children.  The slot of the variable in
+ * the map is looked up once, when the variable is made, so evaluating it is
+ * only an array read.
  * @author Tobin
  * @version 1
  */
 public class Variable extends Node implements Cloneable
 {
-    private String key;
-    private VariableMap map;
+    private final String key;
+    private final int slot;
     /**
-     * Creates a new variable with the given initial value.
-     * @param key The key that this variable maps to in the hash table in
+     * Creates a new variable with the given name.  The variable is added to
+     * the map if it is not already in it.
+     * @param key The name of the variable
      * @param map The equation this variable is a part of.
      */
     public Variable(String key, VariableMap map)
+    {
+        this(key, map.addVariable(key));
+    }
+    /**
+     * Creates a new variable that is already in the map.
+     * @param key The name of the variable
+     * @param slot The slot of the variable in the map
+     */
+    private Variable(String key, int slot)
     {
         super();
         this.key = key;
-        this.map = map;
+        this.slot = slot;
     }
     /**
      * Returns the current value of the variable.
+     * @param c The context that holds the value
      * @return The current value of the variable.
      */
-    public double getValue()
+    public double getValue(EvaluationContext c)
+    {
+        return c.getRegister(slot);
+    }
+    /**
+     * Gets the slot in the variable map that holds the value of this
+     * variable.
+     * @return The slot
+     */
+    public int getSlot()
+    {
+        return slot;
+    }
+
+    /**
+     * Fills the block with the current value of the variable.
+     */
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
     {
-        return map.getVariable(key);
+        double value = c.getRegister(slot);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = value;
+        }
     }
 
     public String toString()
@@ -47,17 +82,19 @@ public class Variable extends Node implements Cloneable
         return key;
     }
     /**
-     * Returns a clone of the variable object.  The key and map are not
-     * cloned.
+     * Returns a clone of the variable object.  The clone has the same key and
+     * slot.
      * @return The copy of this variable.
      */
     public Node clone()
     {
-        return new Variable(key, map);
+        return new Variable(key, slot);
     }
     /**
      * Parses the passed partial equation for any variables it may contain.
-     * New variables are added to the variable map.
+     * New variables are added to the variable map.  x, and x1, x2, and so on,
+     * are the input columns of the data, and are parsed into
+     * <tt>Input</tt> nodes instead.
      * @param in The partial equation to parse
      * @param map The variable map to add any new variables to.
      * @return The passed partial equation, with all of the variables
@@ -65,7 +102,7 @@ public class Variable extends Node implements Cloneable
      */
     public static PartialEquation parse(PartialEquation in, VariableMap map)
     {
-        Pattern p = Pattern.compile("(\\$[a-z]+|x|pi|e)", Pattern.CASE_INSENSITIVE);
+        Pattern p = Pattern.compile("(\\$[a-z]+|x[0-9]*|pi|e)", Pattern.CASE_INSENSITIVE);
         Matcher m;
 
         while(true)
@@ -75,8 +112,16 @@ public class Variable extends Node implements Cloneable
             {
                 String key = in.getString(m.start(), m.end());
 //                System.out.println(key);
-                in.insert(m.start(), m.end() - 1, new EquationPiece(new Variable(key, map)));
-                map.addVariable(key);
+                Node n;
+                if(key.charAt(0) == 'x' || key.charAt(0) == 'X')
+                {
+                    n = new Input(key, map.addInput(inputColumn(key)));
+                }
+                else
+                {
+                    n = new Variable(key, map);
+                }
+                in.insert(m.start(), m.end() - 1, new EquationPiece(n));
 
                 return Variable.parse(in, map);
             }
@@ -86,7 +131,23 @@ public class Variable extends Node implements Cloneable
             }
         }
     }
-    
+    /**
+     * Gets the index of the input column with the given name, 0 for x and
+     * x1, 1 for x2, and so on.
+     */
+    private static int inputColumn(String key)
+    {
+        if(key.length() == 1)
+        {
+            return 0;
+        }
+        if(key.length() > 7 || Integer.parseInt(key.substring(1)) < 1)
+        {
+            throw new SyntaxException("No such input: "+key);
+        }
+        return Integer.parseInt(key.substring(1)) - 1;
+    }
+
     public void validityCheck()
     {
         if(getChildren().length != 0)
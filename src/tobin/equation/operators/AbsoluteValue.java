@@ -1,6 +1,9 @@
 
 package tobin.equation.operators;
 
+import tobin.equation.BlockOperations;
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -17,13 +20,19 @@ public class AbsoluteValue extends UnaryOperator implements Cloneable
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("abs("+val+"): "+Math.abs(val));
         return Math.abs(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        BlockOperations.abs(out, length);
+    }
+
     public Node clone()
     {
         return new AbsoluteValue((getChild()).clone());
@@ -34,6 +43,11 @@ public class AbsoluteValue extends UnaryOperator implements Cloneable
         return "abs";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.ABSOLUTE_VALUE;
+    }
+
     public AbsoluteValue getInstance(Node operand)
     {
         return new AbsoluteValue(operand);
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -16,13 +18,22 @@ public class Arccos extends UnaryOperator implements Cloneable
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("arccos("+val+"): "+Math.acos(val));
         return Math.acos(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.acos(out[i]);
+        }
+    }
+
     public Node clone()
     {
         return new Arccos((getChild()).clone());
@@ -33,6 +44,11 @@ public class Arccos extends UnaryOperator implements Cloneable
         return "arccos";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.ARCCOS;
+    }
+
     public Arccos getInstance(Node operand)
     {
         return new Arccos(operand);
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -16,13 +18,22 @@ public class Arctan extends UnaryOperator implements Cloneable
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("arctan("+val+"): "+Math.atan(val));
         return Math.atan(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.atan(out[i]);
+        }
+    }
+
     public Node clone()
     {
         return new Arctan((getChild()).clone());
@@ -33,6 +44,11 @@ public class Arctan extends UnaryOperator implements Cloneable
         return "arctan";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.ARCTAN;
+    }
+
     public Arctan getInstance(Node operand)
     {
         return new Arctan(operand);
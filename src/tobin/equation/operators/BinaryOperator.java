@@ -3,6 +3,7 @@ package tobin.equation.operators;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import tobin.equation.EquationPiece;
+import tobin.equation.EvaluationContext;
 import tobin.equation.IllegalChildCountException;
 import tobin.equation.Node;
 import tobin.equation.PartialEquation;
@@ -73,6 +74,25 @@ public abstract class BinaryOperator extends Node
         validityCheck();
         return getChildren()[1];
     }
+    /**
+     * Evaluates both operands for a block of data points.  The primary operand
+     * is put in out, and the secondary operand is put in a scratch array taken
+     * from the context, which is returned.  The caller must give the array
+     * back with <tt>c.releaseScratch()</tt> when it is done with it.
+     * @param c The context to evaluate the operands in
+     * @param inputs The input columns of all of the data points
+     * @param offset The index in the columns of the first point in the block
+     * @param length The number of points in the block
+     * @param out Where to put the value of the primary operand
+     * @return The value of the secondary operand at each point
+     */
+    protected double[] evaluateOperands(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getPrimaryOperand().evaluate(c, inputs, offset, length, out);
+        double scratch[] = c.takeScratch(length);
+        getSecondaryOperand().evaluate(c, inputs, offset, length, scratch);
+        return scratch;
+    }
     /**
      * Parses the given partial equation for all of the binary operators it may
      * contain.  After this method is complete there will no longer be any
@@ -166,6 +186,12 @@ public abstract class BinaryOperator extends Node
      * @return The string to search for in the partial equation
      */
     public abstract String getFunction();
+    /**
+     * Gets the instruction that performs this operation in a compiled
+     * <tt>EquationProgram</tt>.
+     * @return The opcode for this operator
+     */
+    public abstract int getOpcode();
     /**
      * Gets an instance of this node, so new instances can be declared using
      * generics in the parse method.
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -16,13 +18,22 @@ public class Cos extends UnaryOperator
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("cos("+val+"): "+Math.cos(val));
         return Math.cos(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.cos(out[i]);
+        }
+    }
+
     public Node clone()
     {
         return new Cos(getChild().clone());
@@ -33,6 +44,11 @@ public class Cos extends UnaryOperator
         return "cos";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.COS;
+    }
+
     public Cos getInstance(Node operand)
     {
         return new Cos(operand);
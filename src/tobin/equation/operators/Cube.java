@@ -0,0 +1,64 @@
+package tobin.equation.operators;
+
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * A power with an exponent of 3.  This is made by the simplifier in place of
+ * a^3, so that it is computed with two multiplications instead of a call to
+ * Math.pow.
+ * @author Tobin
+ * @version 1
+ */
+public class Cube extends UnaryOperator
+{
+    public Cube(Node operand)
+    {
+        super(operand);
+    }
+
+    public double getValue(EvaluationContext c)
+    {
+        double val = getChild().getValue(c);
+        return val * val * val;
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = out[i] * out[i] * out[i];
+        }
+    }
+
+    public Node clone()
+    {
+        return new Cube(getChild().clone());
+    }
+    /**
+     * This is never parsed, because it is only made when simplifying a power.
+     * @return The exponent as it would be written
+     */
+    public String getFunction()
+    {
+        return "\\^3";
+    }
+
+    public int getOpcode()
+    {
+        return EquationProgram.CUBE;
+    }
+
+    public Cube getInstance(Node operand)
+    {
+        return new Cube(operand);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getChild()+"^3";
+    }
+}
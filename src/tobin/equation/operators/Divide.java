@@ -1,5 +1,8 @@
 package tobin.equation.operators;
 
+import tobin.equation.BlockOperations;
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -19,18 +22,30 @@ public class Divide extends BinaryOperator
         return "/";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.DIVIDE;
+    }
+
     public BinaryOperator getInstance(Node a, Node b)
     {
         return new Divide(a, b);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val1 = getPrimaryOperand().getValue(), val2 = getSecondaryOperand().getValue();
+        double val1 = getPrimaryOperand().getValue(c), val2 = getSecondaryOperand().getValue(c);
 //        System.out.println(val1+"/"+val2+": "+(val1 / val2));
         return val1 / val2;
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        double b[] = evaluateOperands(c, inputs, offset, length, out);
+        BlockOperations.divide(out, b, length);
+        c.releaseScratch();
+    }
+
     public Node clone()
     {
         return new Divide(getPrimaryOperand().clone(), getSecondaryOperand().clone());
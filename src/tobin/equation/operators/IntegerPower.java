@@ -0,0 +1,109 @@
+package tobin.equation.operators;
+
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * A power with a whole number exponent.  This is made by the simplifier in
+ * place of a^n when n is a whole number that does not have its own node, and
+ * it is computed by repeated squaring, which takes at most two
+ * multiplications per bit of the exponent instead of a call to Math.pow.  A
+ * negative exponent is computed as one over the positive power.
+ * @author Tobin
+ * @version 1
+ */
+public class IntegerPower extends UnaryOperator
+{
+    public static final int MAX_EXPONENT = 64;
+
+    private final int exponent;
+    /**
+     * Makes a new power.
+     * @param operand The base
+     * @param exponent The exponent, whose absolute value must be at most
+     * MAX_EXPONENT
+     */
+    public IntegerPower(Node operand, int exponent)
+    {
+        super(operand);
+        if(Math.abs(exponent) > MAX_EXPONENT)
+        {
+            throw new IllegalArgumentException("Exponent too large: "+exponent);
+        }
+        this.exponent = exponent;
+    }
+    /**
+     * Computes a^n by repeated squaring.  This is also called by the
+     * generated kernels.
+     * @param a The base
+     * @param n The exponent
+     * @return a^n
+     */
+    public static double power(double a, int n)
+    {
+        int bits = Math.abs(n);
+        double out = 1;
+        while(bits != 0)
+        {
+            if((bits & 1) != 0)
+            {
+                out *= a;
+            }
+            a *= a;
+            bits >>= 1;
+        }
+        return n < 0 ? 1 / out : out;
+    }
+
+    public double getValue(EvaluationContext c)
+    {
+        return power(getChild().getValue(c), exponent);
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = power(out[i], exponent);
+        }
+    }
+    /**
+     * Gets the exponent of this power.
+     * @return The exponent
+     */
+    public int getExponent()
+    {
+        return exponent;
+    }
+
+    public Node clone()
+    {
+        return new IntegerPower(getChild().clone(), exponent);
+    }
+    /**
+     * This is never parsed, because it is only made when simplifying a power.
+     * @return The exponent as it would be written
+     */
+    public String getFunction()
+    {
+        return "\\^"+exponent;
+    }
+
+    public int getOpcode()
+    {
+        return EquationProgram.INTEGER_POWER;
+    }
+
+    public IntegerPower getInstance(Node operand)
+    {
+        return new IntegerPower(operand, exponent);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getChild()+"^"+exponent;
+    }
+}
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -15,13 +17,22 @@ public class Ln extends UnaryOperator implements Cloneable
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("ln("+val+"): "+Math.log(val));
         return Math.log(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.log(out[i]);
+        }
+    }
+
     public Node clone()
     {
         return new Ln((getChild()).clone());
@@ -32,6 +43,11 @@ public class Ln extends UnaryOperator implements Cloneable
         return "ln";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.LN;
+    }
+
     public Ln getInstance(Node operand)
     {
         return new Ln(operand);
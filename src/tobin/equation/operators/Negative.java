@@ -2,7 +2,10 @@ package tobin.equation.operators;
 
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import tobin.equation.BlockOperations;
 import tobin.equation.EquationPiece;
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.IllegalChildCountException;
 import tobin.equation.Node;
 import tobin.equation.PartialEquation;
@@ -31,18 +34,29 @@ public class Negative extends UnaryOperator implements Cloneable
         return "-";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.NEGATIVE;
+    }
+
     public Negative(Node operand)
     {
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("-"+val+": "+(-val));
         return -val;
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        BlockOperations.negate(out, length);
+    }
+
     public Node clone()
     {
         return new Negative(getChildren()[0].clone());
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -19,6 +21,11 @@ public class Power extends BinaryOperator
         return "\\^";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.POWER;
+    }
+
     public BinaryOperator getInstance(Node a, Node b)
     {
         return new Power(a, b);
@@ -27,13 +34,23 @@ public class Power extends BinaryOperator
      * a^b
      * @return a^b
      */
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val1 = getPrimaryOperand().getValue(), val2 = getSecondaryOperand().getValue();
+        double val1 = getPrimaryOperand().getValue(c), val2 = getSecondaryOperand().getValue(c);
 //        System.out.println(val1+"^"+val2+": "+Math.pow(val1, val2));
         return Math.pow(val1, val2);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        double b[] = evaluateOperands(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.pow(out[i], b[i]);
+        }
+        c.releaseScratch();
+    }
+
     public Node clone()
     {
         return new Power(getPrimaryOperand().clone(), getSecondaryOperand().clone());
@@ -0,0 +1,64 @@
+package tobin.equation.operators;
+
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * A power with an exponent of -1.  This is made by the simplifier in place of
+ * a^-1, so that it is computed with one division instead of a call to
+ * Math.pow.
+ * @author Tobin
+ * @version 1
+ */
+public class Reciprocal extends UnaryOperator
+{
+    public Reciprocal(Node operand)
+    {
+        super(operand);
+    }
+
+    public double getValue(EvaluationContext c)
+    {
+        double val = getChild().getValue(c);
+        return 1 / val;
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = 1 / out[i];
+        }
+    }
+
+    public Node clone()
+    {
+        return new Reciprocal(getChild().clone());
+    }
+    /**
+     * This is never parsed, because it is only made when simplifying a power.
+     * @return The exponent as it would be written
+     */
+    public String getFunction()
+    {
+        return "\\^-1";
+    }
+
+    public int getOpcode()
+    {
+        return EquationProgram.RECIPROCAL;
+    }
+
+    public Reciprocal getInstance(Node operand)
+    {
+        return new Reciprocal(operand);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getChild()+"^-1";
+    }
+}
@@ -0,0 +1,64 @@
+package tobin.equation.operators;
+
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * A power with an exponent of 2.  This is made by the simplifier in place of
+ * a^2, so that it is computed with one multiplication instead of a call to
+ * Math.pow.
+ * @author Tobin
+ * @version 1
+ */
+public class Square extends UnaryOperator
+{
+    public Square(Node operand)
+    {
+        super(operand);
+    }
+
+    public double getValue(EvaluationContext c)
+    {
+        double val = getChild().getValue(c);
+        return val * val;
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = out[i] * out[i];
+        }
+    }
+
+    public Node clone()
+    {
+        return new Square(getChild().clone());
+    }
+    /**
+     * This is never parsed, because it is only made when simplifying a power.
+     * @return The exponent as it would be written
+     */
+    public String getFunction()
+    {
+        return "\\^2";
+    }
+
+    public int getOpcode()
+    {
+        return EquationProgram.SQUARE;
+    }
+
+    public Square getInstance(Node operand)
+    {
+        return new Square(operand);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getChild()+"^2";
+    }
+}
@@ -0,0 +1,80 @@
+package tobin.equation.operators;
+
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * A power with an exponent of 0.5.  This is made by the simplifier in place of
+ * a^0.5, so that it is computed with Math.sqrt, which is a single instruction,
+ * instead of Math.pow.  Math.sqrt alone is not the same as Math.pow for two
+ * inputs: the square root of -0 is -0 and of -infinity is NaN, where Math.pow
+ * gives 0 and infinity.  Those two are fixed up in squareRoot, so a candidate
+ * that overflows to -infinity still gets the same fitness as with Math.pow.
+ * @author Tobin
+ * @version 1
+ */
+public class SquareRoot extends UnaryOperator
+{
+    public SquareRoot(Node operand)
+    {
+        super(operand);
+    }
+
+    /**
+     * Computes a^0.5 the same way Math.pow does.  Adding 0 turns -0 into 0,
+     * and -infinity is checked for, and everything else is Math.sqrt, which is
+     * what Math.pow gives for an exponent of 0.5.  This is also called by the
+     * generated kernels.
+     * @param a The base
+     * @return a^0.5
+     */
+    public static double squareRoot(double a)
+    {
+        return a == Double.NEGATIVE_INFINITY ? Double.POSITIVE_INFINITY : Math.sqrt(a + 0.0);
+    }
+
+    public double getValue(EvaluationContext c)
+    {
+        double val = getChild().getValue(c);
+        return squareRoot(val);
+    }
+
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = squareRoot(out[i]);
+        }
+    }
+
+    public Node clone()
+    {
+        return new SquareRoot(getChild().clone());
+    }
+    /**
+     * This is never parsed, because it is only made when simplifying a power.
+     * @return The exponent as it would be written
+     */
+    public String getFunction()
+    {
+        return "\\^0.5";
+    }
+
+    public int getOpcode()
+    {
+        return EquationProgram.SQUARE_ROOT;
+    }
+
+    public SquareRoot getInstance(Node operand)
+    {
+        return new SquareRoot(operand);
+    }
+
+    @Override
+    public String toString()
+    {
+        return getChild()+"^0.5";
+    }
+}
@@ -1,5 +1,7 @@
 package tobin.equation.operators;
 
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
 import tobin.equation.Node;
 
 /**
@@ -19,13 +21,22 @@ public class Tan extends UnaryOperator
         super(operand);
     }
 
-    public double getValue()
+    public double getValue(EvaluationContext c)
     {
-        double val = getChild().getValue();
+        double val = getChild().getValue(c);
 //        System.out.println("tan("+val+"): "+Math.tan(val));
         return Math.tan(val);
     }
 
+    public void evaluate(EvaluationContext c, double inputs[][], int offset, int length, double out[])
+    {
+        getChild().evaluate(c, inputs, offset, length, out);
+        for (int i = 0; i < length; i++)
+        {
+            out[i] = Math.tan(out[i]);
+        }
+    }
+
     public Node clone()
     {
         return new Tan(getChild().clone());
@@ -36,6 +47,11 @@ public class Tan extends UnaryOperator
         return "tan";
     }
 
+    public int getOpcode()
+    {
+        return EquationProgram.TAN;
+    }
+
     public Tan getInstance(Node operand)
     {
         return new Tan(operand);
@@ -150,6 +150,12 @@ public abstract class UnaryOperator extends Node implements Cloneable
      * @return The string to search for in the partial equation
      */
     public abstract String getFunction();
+    /**
+     * Gets the instruction that performs this operation in a compiled
+     * <tt>EquationProgram</tt>.
+     * @return The opcode for this operator
+     */
+    public abstract int getOpcode();
     /**
      * Gets an instance of this node, so new instances can be declared using
      * generics in the parse method.
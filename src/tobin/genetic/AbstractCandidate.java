@@ -8,7 +8,7 @@ public abstract class AbstractCandidate implements Comparable<AbstractCandidate>
 {
     public abstract double getFitness();
     public abstract String getGenomeString();
-    public abstract KeyValue[] getGenome();
+    public abstract double[] getGenome();
     public abstract void recalculateFitness();
     /**
      * Compares this candidate to the one passed to it.  It returns 1, 0, or
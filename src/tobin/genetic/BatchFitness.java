@@ -0,0 +1,71 @@
+package tobin.genetic;
+
+import tobin.equation.BlockOperations;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+
+/**
+ * Calculates fitness by evaluating the equation tree a block of data points
+ * at a time.  Each node is called once per block, and does its work in a
+ * simple loop over the block, instead of being called once per data point.
+ * The variables in the genome are written into a new context once per
+ * genome, and the blocks are evaluated in that context, so many genomes can
+ * be evaluated at once.
+ * @author Tobin
+ * @version 1
+ */
+public class BatchFitness implements FitnessFunction
+{
+    public static final int BLOCK_SIZE = 1024;
+
+    private final Node equation;
+    private final VariableMap map;
+    private final int geneCount;
+    private final double inputs[][], ys[];
+    /**
+     * Makes a new fitness function that evaluates the given tree in blocks.
+     * @param equation The equation to fit to the data
+     * @param data The data used to evaluate each genome
+     * @param map The variable map containing the constants used by the
+     * equation
+     */
+    public BatchFitness(Node equation, Data data, VariableMap map)
+    {
+        this.equation = equation;
+        this.map = map;
+        geneCount = map.size() - VariableMap.FIRST_PARAMETER_SLOT;
+
+        inputs = data.getInputs();
+        ys = data.getY();
+    }
+
+    public double calculateFitness(double genes[], int offset)
+    {
+        return calculateFitness(genes, offset, 0, ys.length);
+    }
+
+    public double calculateFitness(double genes[], int offset, int start, int end)
+    {
+        EvaluationContext context = map.newContext();
+        for (int i = 0; i < geneCount; i++)
+        {
+            context.setRegister(VariableMap.FIRST_PARAMETER_SLOT + i, genes[offset + i]);
+        }
+
+        double block[] = new double[BLOCK_SIZE];
+        double error = 0;
+        for (int from = start; from < end; from += BLOCK_SIZE)
+        {
+            int length = Math.min(BLOCK_SIZE, end - from);
+            equation.evaluate(context, inputs, from, length, block);
+            error += BlockOperations.sumSquaredError(ys, from, block, length);
+        }
+
+        return error;
+    }
+
+    public int size()
+    {
+        return ys.length;
+    }
+}
@@ -4,37 +4,59 @@ import java.util.Arrays;
 import tobin.equation.Node;
 
 /**
- * A member of the population.
+ * One solution, with its genome and fitness.  The population itself is kept
+ * in a <tt>Population</tt>, so candidates are only made to report a
+ * solution, like the best one.
  * @author Tobin
  * @version 1
  */
 public class Candidate extends AbstractCandidate
 {
-    private KeyValue genome[];
+    private final String keys[];
+    private double genome[];
     private double fitness;
-    private final Data data;
     private final Node equation;
-    private final VariableMap map;
+    private final FitnessFunction fitnessFunction;
     /**
      * Makes a new candidate, and calculates its fitness.
-     * @param genome The set of values for the variables for this candidate
-     * @param data The data used to evaluate this candidate
+     * @param keys The names of the variables
+     * @param genome The values of the variables for this candidate, in the
+     * same order
      * @param equation The equation to fit to the data
-     * @param map the variable map where the values of the variables are
-     * stored so they can be accessed by the equation
+     * @param fitnessFunction The function used to evaluate the equation
+     * against the data
      */
-    public Candidate(KeyValue genome[], Data data, Node equation, VariableMap map)
+    public Candidate(String keys[], double genome[], Node equation, FitnessFunction fitnessFunction)
     {
+        this.keys = keys;
         this.genome = genome;
-        this.data = data;
         this.equation = equation;
-        this.map = map;
+        this.fitnessFunction = fitnessFunction;
         fitness = calculateFitness();
 //        if(fitness > 0)
 //        {
 //            System.out.println(this);
 //        }
     }
+    /**
+     * Makes a new candidate whose fitness has already been calculated, for
+     * example by scoring a whole population together.
+     * @param keys The names of the variables
+     * @param genome The values of the variables for this candidate, in the
+     * same order
+     * @param fitness The fitness of the genome
+     * @param equation The equation to fit to the data
+     * @param fitnessFunction The function used to evaluate the equation
+     * against the data
+     */
+    public Candidate(String keys[], double genome[], double fitness, Node equation, FitnessFunction fitnessFunction)
+    {
+        this.keys = keys;
+        this.genome = genome;
+        this.equation = equation;
+        this.fitnessFunction = fitnessFunction;
+        this.fitness = fitness;
+    }
     /**
      * Calculates the fitness of this solution.  The fitness should not need
      * to ever change, so it is stored when the solution is created.  The
@@ -46,25 +68,7 @@ public class Candidate extends AbstractCandidate
      */
     private double calculateFitness()//r = 1- err/tot
     {
-        for (int i = 0; i < genome.length; i++)
-        {
-            map.setVariable(genome[i].getKey(), genome[i].getValue());
-//            System.out.println("Variable map "+genome[i].getKey()+" set to: "+genome[i].getValue());
-        }
-
-        double error = 0;
-        for (int i = 0; i < data.size(); i++)
-        {
-            map.setVariable("x", data.getPoint(i)[0]);
-            double difference = data.getPoint(i)[1] - equation.getValue();
-//            System.out.println("point "+Arrays.toString(data.getPoint(i))+" - f(x) ("+getFriendlyString()+"): "+difference);
-            error = error + (difference * difference);
-//            System.out.println("error: "+error);
-        }
-
-//        System.out.println((1 - (error / total)));
-
-        return error;
+        return fitnessFunction.calculateFitness(genome, 0);
     }
     /**
      * Gets the fitness that was calculated and stored when this candidate was
@@ -76,24 +80,37 @@ public class Candidate extends AbstractCandidate
         return fitness;
     }
     /**
-     * Gets the string representation of the genome of this candidate.  This
-     * method uses the Arrays.toString method to represent the genome.
+     * Gets the string representation of the genome of this candidate, each
+     * key and its value, like the toString of a list of KeyValues.
      * @return the string representation.
      */
     public String getGenomeString()
     {
-        return Arrays.toString(genome);
+        KeyValue pairs[] = new KeyValue[genome.length];
+        for (int i = 0; i < pairs.length; i++)
+        {
+            pairs[i] = new KeyValue(keys[i], genome[i]);
+        }
+        return Arrays.toString(pairs);
     }
     /**
-     * Gets the genome of this candidate, which is a list of keys, and their
-     * corresponding values which differentiate this candidate from the others
-     * in the population.
-     * @return The list of keys and values
+     * Gets the genome of this candidate, which is the values of the
+     * variables, in the same order as the keys, which differentiate this
+     * candidate from the others in the population.
+     * @return The values
      */
-    public KeyValue[] getGenome()
+    public double[] getGenome()
     {
         return genome;
     }
+    /**
+     * Gets the names of the variables in the genome.
+     * @return The names
+     */
+    public String[] getKeys()
+    {
+        return keys;
+    }
     /**
      * Recalculates the fitness of this candidate, in case there has been a
      * change or an error, and the fitness becomes wrong in some way.
@@ -102,6 +119,17 @@ public class Candidate extends AbstractCandidate
     {
         fitness = calculateFitness();
     }
+    /**
+     * Recalculates the fitness of this candidate with a different fitness
+     * function.  This is used to score the best candidates exactly at the end
+     * of a run that used fast math.  The new function is not kept, so
+     * recalculateFitness still uses the original one.
+     * @param f The fitness function to use
+     */
+    public void recalculateFitness(FitnessFunction f)
+    {
+        fitness = f.calculateFitness(genome, 0);
+    }
     /**
      * Gets a string which represents the equation with the variables filled
      * in in their numerical form instead of their variable form. This makes
@@ -115,7 +143,7 @@ public class Candidate extends AbstractCandidate
 
         for (int i = 0; i < genome.length; i++)
         {
-            out = out.replaceAll("\\"+genome[i].getKey(), genome[i].getValue()+"");
+            out = out.replaceAll("\\"+keys[i], genome[i]+"");
         }
         
         return out;
@@ -0,0 +1,182 @@
+package tobin.genetic;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Calculates fitness by splitting the data into chunks of CHUNK_SIZE points,
+ * calculating the fitness of each chunk with another fitness function, and
+ * adding the chunks up in order.  If it is given worker threads the chunks
+ * are calculated at the same time, so one candidate can use every core,
+ * which is faster than scoring many candidates at once when the data is too
+ * big to fit in the cache.<br>
+ * Many genomes can also be scored together.  Each chunk is small enough to
+ * stay in the cache, so every genome is scored on one chunk before moving on
+ * to the next, and the data is read from memory once for all of them instead
+ * of once for each one.<br>
+ * The chunks are always the same, and are always added in the same order,
+ * whether or not there are workers, and whether or not the genomes are
+ * scored together, so the fitness of a genome is exactly the same every
+ * way.
+ * @author Tobin
+ * @version 1
+ */
+public class ChunkedFitness implements GenerationFitness
+{
+    /**
+     * 16384 points, which is 256 KB of x and y values, so a chunk fits in the
+     * L2 cache.
+     */
+    public static final int CHUNK_SIZE = 1 << 14;
+
+    private final FitnessFunction fitnessFunction;
+    private final ExecutorService workers;
+    /**
+     * Makes a new chunked fitness function.
+     * @param fitnessFunction The function used to calculate each chunk
+     * @param workers The threads to calculate the chunks on, or null to
+     * calculate them one after another on the calling thread.  If there are
+     * workers this must never be called from one of them.
+     */
+    public ChunkedFitness(FitnessFunction fitnessFunction, ExecutorService workers)
+    {
+        this.fitnessFunction = fitnessFunction;
+        this.workers = workers;
+    }
+
+    public double calculateFitness(double genes[], int offset)
+    {
+        return calculateFitness(genes, offset, 0, size());
+    }
+    /**
+     * Calculates the fitness over a range of the data.  The range is split on
+     * multiples of CHUNK_SIZE, so a chunk is the same whatever range it is a
+     * part of.
+     */
+    public double calculateFitness(final double genes[], final int offset, int start, int end)
+    {
+        if(workers == null || end - start <= CHUNK_SIZE)
+        {
+            double error = 0;
+            for (int from = start; from < end; from = nextChunk(from, end))
+            {
+                error += fitnessFunction.calculateFitness(genes, offset, from, nextChunk(from, end));
+            }
+            return error;
+        }
+
+        ArrayList<Future<Double>> chunks = new ArrayList<Future<Double>>();
+        for (int from = start; from < end; from = nextChunk(from, end))
+        {
+            final int chunkStart = from, chunkEnd = nextChunk(from, end);
+            chunks.add(workers.submit(new Callable<Double>()
+            {
+                public Double call()
+                {
+                    return fitnessFunction.calculateFitness(genes, offset, chunkStart, chunkEnd);
+                }
+            }));
+        }
+
+        double error = 0;
+        try
+        {
+            for(Future<Double> chunk : chunks)
+            {
+                error += chunk.get();
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers");
+        }
+        catch(ExecutionException ee)
+        {
+            throw new IllegalStateException("A worker failed: "+ee.getCause(), ee.getCause());
+        }
+        return error;
+    }
+
+    public void calculateFitness(final double genes[], final int geneCount, final int first, final int count, double fitness[])
+    {
+        int end = size();
+        if(workers == null || end <= CHUNK_SIZE)
+        {
+            for (int i = first; i < first + count; i++)
+            {
+                fitness[i] = 0;
+            }
+            for (int from = 0; from < end; from = nextChunk(from, end))
+            {
+                addChunk(genes, geneCount, first, count, from, nextChunk(from, end), fitness, first);
+            }
+            return;
+        }
+        double error[] = new double[count];
+
+        ArrayList<Future<double[]>> chunks = new ArrayList<Future<double[]>>();
+        for (int from = 0; from < end; from = nextChunk(from, end))
+        {
+            final int chunkStart = from, chunkEnd = nextChunk(from, end);
+            chunks.add(workers.submit(new Callable<double[]>()
+            {
+                public double[] call()
+                {
+                    double out[] = new double[count];
+                    addChunk(genes, geneCount, first, count, chunkStart, chunkEnd, out, 0);
+                    return out;
+                }
+            }));
+        }
+
+        try
+        {
+            for(Future<double[]> chunk : chunks)
+            {
+                double chunkError[] = chunk.get();
+                for (int i = 0; i < error.length; i++)
+                {
+                    error[i] += chunkError[i];
+                }
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers");
+        }
+        catch(ExecutionException ee)
+        {
+            throw new IllegalStateException("A worker failed: "+ee.getCause(), ee.getCause());
+        }
+        System.arraycopy(error, 0, fitness, first, count);
+    }
+
+    public int size()
+    {
+        return fitnessFunction.size();
+    }
+    /**
+     * Adds the fitness of each row over one chunk to its total, which for
+     * row first + i is at error[offset + i].
+     */
+    private void addChunk(double genes[], int geneCount, int first, int count, int start, int end, double error[], int offset)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            error[offset + i] += fitnessFunction.calculateFitness(genes, (first + i) * geneCount, start, end);
+        }
+    }
+    /**
+     * Gets the index after the end of the chunk that starts at the given
+     * index.
+     */
+    static int nextChunk(int from, int end)
+    {
+        return (int)Math.min(end, (from / CHUNK_SIZE + 1L) * CHUNK_SIZE);
+    }
+}
@@ -0,0 +1,154 @@
+package tobin.genetic;
+
+import java.util.IdentityHashMap;
+import tobin.equation.EvaluationContext;
+import tobin.equation.Node;
+import tobin.equation.ends.Column;
+import tobin.equation.ends.Input;
+import tobin.equation.ends.Value;
+import tobin.equation.ends.Variable;
+import tobin.equation.operators.BinaryOperator;
+import tobin.equation.operators.UnaryOperator;
+
+/**
+ * Finds the parts of the equation that do not depend on any of the variables
+ * the algorithm changes, like x^2 or ln(x) in $a*ln(x)+$b*x^2, or x1*x2.
+ * These parts have the same value at each data point for every candidate, so
+ * they are evaluated once over the whole data set, and replaced by
+ * <tt>Column</tt> nodes that read the stored values.<br>
+ * Only the largest such parts are stored, because storing a part also stores
+ * everything under it.  Each stored part takes 8 bytes per data point, and
+ * parts are stored in the order they appear in the equation until the memory
+ * budget runs out.  The budget is set by the columnCacheBytes setting of
+ * <tt>GeneticConfig</tt>.<br>
+ * If the data is kept outside of the heap, the inputs are copied into small
+ * arrays one block at a time to evaluate the parts, so the whole input
+ * columns are never copied into the heap.  The stored columns are still
+ * arrays, and are still limited by the budget.
+ * @author Tobin
+ * @version 1
+ */
+public class ColumnCache
+{
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private final Data data;
+    private final double inputs[][];
+    private final int size;
+    private final EvaluationContext context;
+    private long budget;
+    private final IdentityHashMap<Node, Node> replaced = new IdentityHashMap<Node, Node>();
+    private final IdentityHashMap<Node, Boolean> dataOnly = new IdentityHashMap<Node, Boolean>();
+    /**
+     * Makes a new cache for one equation.
+     */
+    private ColumnCache(Data data, VariableMap map, long budget)
+    {
+        context = map.newContext();
+        this.budget = budget;
+        this.data = data;
+        inputs = data.isBuffered() ? null : data.getInputs();
+        size = data.size();
+    }
+    /**
+     * Gets a copy of the equation with the parts that only depend on the data
+     * replaced by columns.  The equation passed in is not changed, and shared
+     * nodes stay shared.
+     * @param equation The equation, which may be a graph with shared nodes
+     * @param data The data to compute the columns over
+     * @param map The variable map of the equation
+     * @param budget The most memory to use for columns, in bytes
+     * @return The equation with columns in it
+     */
+    public static Node cache(Node equation, Data data, VariableMap map, long budget)
+    {
+        return new ColumnCache(data, map, budget).replace(equation);
+    }
+    /**
+     * Replaces the node with a column if it only depends on the data,
+     * otherwise replaces its children.
+     */
+    private Node replace(Node n)
+    {
+        Node out = replaced.get(n);
+        if(out != null)
+        {
+            return out;
+        }
+
+        long cost = 8L * size;
+        if(n.getChildren().length > 0 && isDataOnly(n) && cost <= budget)
+        {
+            budget -= cost;
+            double values[] = new double[size];
+            double block[] = new double[BatchFitness.BLOCK_SIZE];
+            double staged[][] = inputs == null ? new double[data.getInputCount()][block.length] : null;
+            for (int start = 0; start < size; start += block.length)
+            {
+                int length = Math.min(block.length, size - start);
+                if(staged == null)
+                {
+                    n.evaluate(context, inputs, start, length, block);
+                }
+                else
+                {
+                    for (int column = 0; column < staged.length; column++)
+                    {
+                        data.getInput(column, start, length, staged[column]);
+                    }
+                    n.evaluate(context, staged, 0, length, block);
+                }
+                System.arraycopy(block, 0, values, start, length);
+            }
+            out = new Column(n, values);
+        }
+        else if(n instanceof UnaryOperator)
+        {
+            out = ((UnaryOperator)n).getInstance(replace(n.getChildren()[0]));
+        }
+        else if(n instanceof BinaryOperator)
+        {
+            out = ((BinaryOperator)n).getInstance(replace(n.getChildren()[0]), replace(n.getChildren()[1]));
+        }
+        else
+        {
+            out = n;
+        }
+        replaced.put(n, out);
+        return out;
+    }
+    /**
+     * Returns if the node depends only on the data, which means it has no
+     * variables other than the inputs, pi, and e, and does not read any
+     * stored columns.
+     */
+    private boolean isDataOnly(Node n)
+    {
+        Boolean out = dataOnly.get(n);
+        if(out == null)
+        {
+            if(n instanceof Variable)
+            {
+                out = ((Variable)n).getSlot() < VariableMap.FIRST_PARAMETER_SLOT;
+            }
+            else if(n instanceof Value || n instanceof Input)
+            {
+                out = true;
+            }
+            else if(n instanceof UnaryOperator || n instanceof BinaryOperator)
+            {
+                out = true;
+                for(Node child : n.getChildren())
+                {
+                    out = out && isDataOnly(child);
+                }
+            }
+            else
+            {
+                out = false;
+            }
+            dataOnly.put(n, out);
+        }
+        return out;
+    }
+}
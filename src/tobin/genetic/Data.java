@@ -1,91 +1,512 @@
 package tobin.genetic;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 
 /**
  * This is the class that store all of the data the program read in from the
  * text file provided by the user.  This data is what the program uses to
- * evaluate each solution in the genetic algorithm.
+ * evaluate each solution in the genetic algorithm.<br>
+ * Each point has one or more inputs, x1, x2, and so on, and a y value.  The
+ * points are stored as columns, one array for each input and one for the y
+ * values, instead of an object for each point.  This takes half the memory,
+ * and the evaluators can loop straight over the arrays.<br>
+ * Data loaded from a .gdat file by <tt>DataFile</tt> is memory mapped
+ * instead, and data can be moved out of the heap with toOffHeap.  Either way
+ * the columns are kept in DoubleBuffers, split into segments, outside of the
+ * heap, so the garbage collector never has to look at them.  The generated
+ * kernels read the segments directly.  Single points are read straight from
+ * the segments too, and the columns are only copied into arrays the first
+ * time an evaluator that needs arrays asks for them.<br>
+ * The memory outside of the heap is freed by release, instead of whenever the
+ * garbage collector gets to it.  Whoever made the data releases it when they
+ * are done with it, and anything that tries to read the buffers after that
+ * gets an IllegalStateException, instead of reading freed memory.
  * @author Tobin
  * @version 1
  */
 public class Data
 {
-    public static final int DIMENSIONS = 2;
-    private final ArrayList<double []> list = new ArrayList<double []>();
-    private final double average;
     /**
-     * Makes a new data object from the given file.
+     * The columns that were arrays from the start, which are null for
+     * buffered data.  They never change, so reading one point does not need
+     * a lock.  Columns copied out of the buffers go in the copies instead.
+     */
+    private final double inputs[][], y[];
+    private double copiedInputs[][], copiedY[];
+    private volatile DoubleBuffer bufferInputs[][], bufferY[];
+    private ByteBuffer owned[];
+    private volatile boolean released = false;
+    private final int size;
+    /**
+     * Makes a new data object from the given file.  The file is parsed by
+     * <tt>DataParser</tt>, in parallel if it is big, on the number of threads
+     * in the default <tt>GeneticConfig</tt>.  The last value on each line is
+     * the y value, and the ones before it are the inputs.
      * @param f
-     * @throws IOException When the readLine method fails.
+     * @throws IOException When the file can not be read.
      * @throws NumberFormatException When the numbers the program is trying to
      * parse do not parse right
      */
     public Data(File f) throws IOException, NumberFormatException
     {
-        BufferedReader br = new BufferedReader(new FileReader(f));
-
-        String line = br.readLine();
-        double coordinates[] = new double[DIMENSIONS];
+        this(f, new GeneticConfig().getThreads());
+    }
+    /**
+     * Makes a new data object from the given file, parsed on the given number
+     * of threads if it is big.
+     * @param f The file
+     * @param threads The number of threads to parse on
+     * @throws IOException When the file can not be read.
+     * @throws NumberFormatException When the numbers the program is trying to
+     * parse do not parse right
+     */
+    public Data(File f, int threads) throws IOException, NumberFormatException
+    {
+        double columns[][] = DataParser.parse(f, threads);
+        inputs = new double[columns.length - 1][];
+        System.arraycopy(columns, 0, inputs, 0, inputs.length);
+        y = columns[columns.length - 1];
+        size = y.length;
 
-        while(line != null)
+//        System.out.println(this);
+    }
+    /**
+     * Makes a new data object with one input from the given columns.  The
+     * arrays are used as they are, not copied, so they must not be changed
+     * afterwards.
+     * @param x The x value of each point
+     * @param y The y value of each point
+     * @throws IllegalArgumentException if the columns are not the same length
+     */
+    public Data(double x[], double y[])
+    {
+        this(new double[][]{x}, y);
+    }
+    /**
+     * Makes a new data object from the given columns.  The arrays are used as
+     * they are, not copied, so they must not be changed afterwards.
+     * @param inputs The input columns, x1, x2, and so on
+     * @param y The y value of each point
+     * @throws IllegalArgumentException if there are no inputs, or the columns
+     * are not all the same length
+     */
+    public Data(double inputs[][], double y[])
+    {
+        if(inputs.length == 0)
         {
-            coordinates = new double[DIMENSIONS];
-//            System.out.println("line: "+line);
-            String [] parts = line.split("\t|,", DIMENSIONS + 1);
-            for (int i= 0; i < DIMENSIONS; i++)
+            throw new IllegalArgumentException("No input columns");
+        }
+        for (int i = 0; i < inputs.length; i++)
+        {
+            if(inputs[i].length != y.length)
             {
-                coordinates[i] = Double.parseDouble(parts[i]);
+                throw new IllegalArgumentException("Columns are different lengths: "+inputs[i].length+", "+y.length);
             }
-//            System.out.println(Arrays.toString(coordinates));
-            list.add(coordinates);
-            line = br.readLine();
         }
-
-        double temp = 0;
-        for (int i = 0; i < list.size(); i++)
+        this.inputs = inputs.clone();
+        this.y = y;
+        size = y.length;
+    }
+    /**
+     * Makes a new data object backed by buffers outside of the heap.  Each
+     * column is split into segments of <tt>DataFile.SEGMENT_SIZE</tt> points.
+     * @param inputs The segments of each input column
+     * @param y The segments of the y column
+     * @param size The number of points
+     * @param owned The buffers the segments are views of, which are freed by
+     * release
+     */
+    Data(DoubleBuffer inputs[][], DoubleBuffer y[], int size, ByteBuffer owned[])
+    {
+        this.inputs = new double[inputs.length][];
+        this.y = null;
+        copiedInputs = new double[inputs.length][];
+        bufferInputs = inputs;
+        bufferY = y;
+        this.size = size;
+        this.owned = owned;
+    }
+    /**
+     * Makes a copy of this data with the columns outside of the heap, in
+     * direct buffers.  This data is not changed, so once it is no longer used
+     * its arrays can be collected.  The direct buffers count against the
+     * -XX:MaxDirectMemorySize limit of the JVM instead of the heap.
+     * @return The copy
+     */
+    public Data toOffHeap()
+    {
+        ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+        DoubleBuffer offHeapInputs[][] = new DoubleBuffer[inputs.length][];
+        for (int i = 0; i < inputs.length; i++)
         {
-            temp += list.get(i)[1];
+            offHeapInputs[i] = allocate(size, buffers);
+            for (int j = 0; j < offHeapInputs[i].length; j++)
+            {
+                int start = j * DataFile.SEGMENT_SIZE;
+                copy(inputs[i], inputs[i] != null ? null : inputSegments(i), start, offHeapInputs[i][j].capacity(), offHeapInputs[i][j]);
+            }
         }
-        temp /= list.size();
-        average = temp;
-
-//        System.out.println(this);
+        DoubleBuffer offHeapY[] = allocate(size, buffers);
+        for (int j = 0; j < offHeapY.length; j++)
+        {
+            copy(y, y != null ? null : ySegments(), j * DataFile.SEGMENT_SIZE, offHeapY[j].capacity(), offHeapY[j]);
+        }
+        return new Data(offHeapInputs, offHeapY, size, buffers.toArray(new ByteBuffer[0]));
+    }
+    /**
+     * Frees the buffers outside of the heap that hold the columns, if this
+     * data owns any.  Once it is released, reading the buffers throws an
+     * IllegalStateException, but columns that were already copied into
+     * arrays can still be read.  Nothing may be reading the buffers while
+     * they are released.
+     */
+    public synchronized void release()
+    {
+        if(owned == null)
+        {
+            return;
+        }
+        released = true;
+        bufferInputs = null;
+        bufferY = null;
+        for (int i = 0; i < owned.length; i++)
+        {
+            free(owned[i]);
+        }
+        owned = null;
+    }
+    /**
+     * Returns if the buffers of this data have been freed by release.
+     * Anything that kept the segments must check this before reading them.
+     * @return If the data has been released
+     */
+    public boolean isReleased()
+    {
+        return released;
+    }
+    /**
+     * Returns if the columns are kept in buffers outside of the heap, either
+     * memory mapped from a file or from toOffHeap.  Released data is still
+     * buffered, even though the buffers can no longer be read.
+     * @return If the data is in buffers
+     */
+    public boolean isBuffered()
+    {
+        return y == null;
+    }
+    /**
+     * Gets the segments of one input column.  Each segment holds
+     * <tt>DataFile.SEGMENT_SIZE</tt> points, except the last.  The segments
+     * must only be read with absolute gets, and must not be changed.
+     * @param column The index of the input column, starting at 0 for x1
+     * @return The segments, or null if the data is not in buffers
+     * @throws IllegalStateException if the data has been released
+     */
+    public DoubleBuffer[] getInputSegments(int column)
+    {
+        return y != null ? null : inputSegments(column).clone();
+    }
+    /**
+     * Gets the segments of the y column, the same way as getInputSegments.
+     * @return The segments, or null if the data is not in buffers
+     * @throws IllegalStateException if the data has been released
+     */
+    public DoubleBuffer[] getYSegments()
+    {
+        return y != null ? null : ySegments().clone();
+    }
+    /**
+     * Gets the segments of one input column of buffered data.
+     * @throws IllegalStateException if the data has been released
+     */
+    private DoubleBuffer[] inputSegments(int column)
+    {
+        DoubleBuffer segments[][] = bufferInputs;
+        if(segments == null)
+        {
+            throw new IllegalStateException("The data has been released");
+        }
+        return segments[column];
     }
     /**
-     * Gets the two double values representing a point at the given index in
-     * the list of data points.
+     * Gets the segments of the y column of buffered data.
+     * @throws IllegalStateException if the data has been released
+     */
+    private DoubleBuffer[] ySegments()
+    {
+        DoubleBuffer segments[] = bufferY;
+        if(segments == null)
+        {
+            throw new IllegalStateException("The data has been released");
+        }
+        return segments;
+    }
+    /**
+     * Gets the values of a point at the given index in the list of data
+     * points, the inputs and then the y value.  The array is made when this
+     * is called, so the evaluators use the columns instead.
      * @param index The index of the point to retrieve.
-     * @return The two values representing the data point
+     * @return The values representing the data point
      */
     public double[] getPoint(int index)
     {
-        return list.get(index);
+        double out[] = new double[inputs.length + 1];
+        for (int i = 0; i < inputs.length; i++)
+        {
+            out[i] = getInput(i, index);
+        }
+        out[inputs.length] = getY(index);
+        return out;
+    }
+    /**
+     * Gets the number of input columns.
+     * @return The number of inputs each point has
+     */
+    public int getInputCount()
+    {
+        return inputs.length;
+    }
+    /**
+     * Gets one input of the point at the given index.
+     * @param column The index of the input column, starting at 0 for x1
+     * @param index The index of the point
+     * @return The value
+     */
+    public double getInput(int column, int index)
+    {
+        double values[] = inputs[column];
+        return values != null ? values[index] : get(inputSegments(column), index);
+    }
+    /**
+     * Copies part of one input column into an array, without copying the
+     * whole column out of its buffers.
+     * @param column The index of the input column, starting at 0 for x1
+     * @param start The index of the first point to copy
+     * @param length The number of points to copy
+     * @param out Where to put the values, starting at index 0
+     */
+    public void getInput(int column, int start, int length, double out[])
+    {
+        double values[] = inputs[column];
+        copy(values, values != null ? null : inputSegments(column), start, length, DoubleBuffer.wrap(out));
+    }
+    /**
+     * Copies part of the y column into an array, the same way as getInput.
+     * @param start The index of the first point to copy
+     * @param length The number of points to copy
+     * @param out Where to put the values, starting at index 0
+     */
+    public void getY(int start, int length, double out[])
+    {
+        copy(y, y != null ? null : ySegments(), start, length, DoubleBuffer.wrap(out));
+    }
+    /**
+     * Copies part of a column into a buffer, starting at index 0, from the
+     * array if there is one, and otherwise from the segments.
+     */
+    private static void copy(double values[], DoubleBuffer segments[], int start, int length, DoubleBuffer out)
+    {
+        DoubleBuffer to = out.duplicate();
+        to.position(0);
+        if(values != null)
+        {
+            to.put(values, start, length);
+            return;
+        }
+        while(length > 0)
+        {
+            DoubleBuffer segment = segments[start / DataFile.SEGMENT_SIZE].duplicate();
+            int offset = start % DataFile.SEGMENT_SIZE;
+            int count = Math.min(length, segment.capacity() - offset);
+            segment.limit(offset + count).position(offset);
+            to.put(segment);
+            start += count;
+            length -= count;
+        }
+    }
+    /**
+     * Gets the x value of the point at the given index, which is its first
+     * input.
+     * @param index The index of the point
+     * @return The x value
+     */
+    public double getX(int index)
+    {
+        return getInput(0, index);
+    }
+    /**
+     * Gets the y value of the point at the given index.
+     * @param index The index of the point
+     * @return The y value
+     */
+    public double getY(int index)
+    {
+        return y != null ? y[index] : get(ySegments(), index);
+    }
+    /**
+     * Gets the values of one input of all of the points.  This is not a copy,
+     * so it must not be changed.  Its length is the number of points.  If the
+     * data is mapped the column is copied out of the mapping the first time.
+     * @param column The index of the input column, starting at 0 for x1
+     * @return The input column
+     */
+    public synchronized double[] getInput(int column)
+    {
+        if(inputs[column] != null)
+        {
+            return inputs[column];
+        }
+        if(copiedInputs[column] == null)
+        {
+            copiedInputs[column] = copy(inputSegments(column), size);
+        }
+        return copiedInputs[column];
+    }
+    /**
+     * Gets every input column.  The array is a copy, but the columns are not,
+     * so they must not be changed.
+     * @return The input columns, x1, x2, and so on
+     */
+    public double[][] getInputs()
+    {
+        double out[][] = new double[inputs.length][];
+        for (int i = 0; i < out.length; i++)
+        {
+            out[i] = getInput(i);
+        }
+        return out;
+    }
+    /**
+     * Gets the x values of all of the points, which is the first input
+     * column.
+     * @return The x column
+     */
+    public double[] getX()
+    {
+        return getInput(0);
+    }
+    /**
+     * Gets the y values of all of the points.  This is not a copy, so it must
+     * not be changed.  Its length is the number of points.  If the data is
+     * mapped the column is copied out of the mapping the first time.
+     * @return The y column
+     */
+    public synchronized double[] getY()
+    {
+        if(y != null)
+        {
+            return y;
+        }
+        if(copiedY == null)
+        {
+            copiedY = copy(ySegments(), size);
+        }
+        return copiedY;
     }
     /**
      * Gets the number of data points stored in this class.
      * @return the number of data points
      */
-    public double size()
+    public int size()
+    {
+        return size;
+    }
+    /**
+     * Reads one value from a mapped column.
+     */
+    private static double get(DoubleBuffer segments[], int index)
+    {
+        return segments[index / DataFile.SEGMENT_SIZE].get(index % DataFile.SEGMENT_SIZE);
+    }
+    /**
+     * Copies a whole mapped column into an array.
+     */
+    private static double[] copy(DoubleBuffer segments[], int size)
+    {
+        double out[] = new double[size];
+        for (int i = 0; i < segments.length; i++)
+        {
+            DoubleBuffer segment = segments[i].duplicate();
+            segment.rewind();
+            segment.get(out, i * DataFile.SEGMENT_SIZE, segment.remaining());
+        }
+        return out;
+    }
+    /**
+     * Allocates direct buffers for a column of the given size, one for each
+     * segment, and adds them to the list.
+     */
+    private static DoubleBuffer[] allocate(int size, ArrayList<ByteBuffer> buffers)
     {
-        return list.size();
+        DoubleBuffer out[] = new DoubleBuffer[(int)((size + (long)DataFile.SEGMENT_SIZE - 1) / DataFile.SEGMENT_SIZE)];
+        for (int i = 0; i < out.length; i++)
+        {
+            int length = (int)Math.min(DataFile.SEGMENT_SIZE, size - (long)i * DataFile.SEGMENT_SIZE);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(8 * length).order(ByteOrder.nativeOrder());
+            buffers.add(buffer);
+            out[i] = buffer.asDoubleBuffer();
+        }
+        return out;
+    }
+    /**
+     * Frees a direct or mapped buffer now, instead of when it is collected.
+     * There is no public way to do this, so it uses Unsafe.invokeCleaner on
+     * Java 9 and later, and the cleaner of the buffer on Java 8.  If neither
+     * works the buffer is left for the garbage collector.
+     */
+    static void free(ByteBuffer buffer)
+    {
+        try
+        {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        }
+        catch(Exception e)
+        {
+            //not Java 9 or later
+        }
+        try
+        {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if(cleaner != null)
+            {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch(Exception e)
+        {
+            //left for the garbage collector
+        }
     }
 
     @Override
     public String toString()
     {
-        String out = Arrays.toString(list.get(0));
+        StringBuilder out = new StringBuilder();
 
-        for (int i = 1; i < list.size(); i++)
+        for (int i = 0; i < size; i++)
         {
-            out += "\n"+Arrays.toString(list.get(i));
+            out.append(i == 0 ? "[" : "\n[");
+            for (int j = 0; j < inputs.length; j++)
+            {
+                out.append(getInput(j, i)).append(", ");
+            }
+            out.append(getY(i)).append("]");
         }
 
-        return out;
+        return out.toString();
     }
-}
\ No newline at end of file
+}
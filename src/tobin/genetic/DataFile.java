@@ -0,0 +1,258 @@
+package tobin.genetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Reads and writes data in the binary .gdat format, which can be opened
+ * without parsing anything.  The file is memory mapped, so opening it takes
+ * the same time no matter how big it is, and every run that opens the same
+ * file shares the same pages of memory in the operating system.<br>
+ * The format is a 32 byte header followed by the columns, one after another,
+ * each one the values of every point as little endian doubles.  The header
+ * is, all little endian:<br>
+ * bytes 0-3: the magic number, "GDAT" in ASCII<br>
+ * bytes 4-7: the version, 1<br>
+ * bytes 8-11: the number of columns, which are the inputs, x1, x2, and so on,
+ * and then y<br>
+ * bytes 12-15: unused, 0<br>
+ * bytes 16-23: the number of points<br>
+ * bytes 24-31: unused, 0<br>
+ * Text files can be loaded outside of the heap too, with the offHeap setting
+ * of <tt>GeneticConfig</tt>.  They are parsed into arrays first, and then
+ * copied into direct buffers.<br>
+ * Text files can be converted with<br>
+ * <tt>java tobin.genetic.DataFile data.txt data.gdat</tt>
+ * @author Tobin
+ * @version 1
+ */
+public class DataFile
+{
+    public static final String EXTENSION = ".gdat";
+    public static final int MAGIC = 0x54414447;//"GDAT" read little endian
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    /**
+     * The most columns a file can have.  The header is checked against this
+     * before anything is made for the columns, so a broken header can not
+     * make it run out of memory.
+     */
+    public static final int MAX_COLUMNS = 1 << 16;
+    /**
+     * The most points in one mapping, so that each mapping is less than the
+     * 2 GB limit of FileChannel.map.
+     */
+    public static final int SEGMENT_SIZE = 1 << 27;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private DataFile()
+    {
+    }
+    /**
+     * Loads data from a file, with the settings of the default
+     * <tt>GeneticConfig</tt>.
+     * @param f The file
+     * @return The data
+     * @throws IOException if the file could not be read, or is not a valid
+     * .gdat file
+     * @throws NumberFormatException if a text file has a number that does not
+     * parse
+     */
+    public static Data load(File f) throws IOException
+    {
+        return load(f, new GeneticConfig());
+    }
+    /**
+     * Loads data from a file.  Files that end in .gdat are memory mapped, and
+     * anything else is read as text on the threads of the config, and then
+     * moved outside of the heap if the config says to.
+     * @param f The file
+     * @param config The settings to load with
+     * @return The data
+     * @throws IOException if the file could not be read, or is not a valid
+     * .gdat file
+     * @throws NumberFormatException if a text file has a number that does not
+     * parse
+     */
+    public static Data load(File f, GeneticConfig config) throws IOException
+    {
+        if(f.getName().toLowerCase().endsWith(EXTENSION))
+        {
+            return map(f);
+        }
+        Data d = new Data(f, config.getThreads());
+        return config.isOffHeap() ? d.toOffHeap() : d;
+    }
+    /**
+     * Memory maps a .gdat file.  Nothing is read until it is used.
+     * @param f The file
+     * @return The data, backed by the mapping
+     * @throws IOException if the file could not be mapped, or is not a valid
+     * .gdat file
+     */
+    public static Data map(File f) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try
+        {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while(header.hasRemaining())
+            {
+                if(channel.read(header) < 0)
+                {
+                    throw new IOException("Not a .gdat file, too short: "+f);
+                }
+            }
+            header.flip();
+            if(header.getInt(0) != MAGIC)
+            {
+                throw new IOException("Not a .gdat file: "+f);
+            }
+            if(header.getInt(4) != VERSION)
+            {
+                throw new IOException("Unknown .gdat version "+header.getInt(4)+": "+f);
+            }
+            int columns = header.getInt(8);
+            if(columns < 2 || columns > MAX_COLUMNS)
+            {
+                throw new IOException("Expected 2 to "+MAX_COLUMNS+" columns, found "+columns+": "+f);
+            }
+            long points = header.getLong(16);
+            if(points < 0 || points > Integer.MAX_VALUE)
+            {
+                throw new IOException("Bad number of points "+points+": "+f);
+            }
+            //divided instead of multiplied, so a big header can not overflow
+            if(points > (channel.size() - HEADER_SIZE) / 8 / columns)
+            {
+                throw new IOException("File is shorter than its header says: "+f);
+            }
+
+            int size = (int)points;
+            ArrayList<ByteBuffer> mappings = new ArrayList<ByteBuffer>();
+            DoubleBuffer inputs[][] = new DoubleBuffer[columns - 1][];
+            for (int i = 0; i < inputs.length; i++)
+            {
+                inputs[i] = mapColumn(channel, HEADER_SIZE + 8L * i * size, size, mappings);
+            }
+            DoubleBuffer y[] = mapColumn(channel, HEADER_SIZE + 8L * inputs.length * size, size, mappings);
+            return new Data(inputs, y, size, mappings.toArray(new ByteBuffer[0]));
+        }
+        finally
+        {
+            //the mappings stay valid after the file is closed
+            file.close();
+        }
+    }
+    /**
+     * Maps one column, in segments of at most SEGMENT_SIZE points, and adds
+     * the mappings to the list.
+     */
+    private static DoubleBuffer[] mapColumn(FileChannel channel, long position, int size, ArrayList<ByteBuffer> mappings) throws IOException
+    {
+        DoubleBuffer out[] = new DoubleBuffer[(int)((size + (long)SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < out.length; i++)
+        {
+            int length = (int)Math.min(SEGMENT_SIZE, size - (long)i * SEGMENT_SIZE);
+            ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, position + 8L * i * SEGMENT_SIZE, 8L * length);
+            mappings.add(mapping);
+            out[i] = mapping.order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+        return out;
+    }
+    /**
+     * Writes data to a .gdat file.  Any file that is already there is
+     * replaced.
+     * @param d The data to write
+     * @param f The file to write to
+     * @throws IOException if the file could not be written, or the data has
+     * more than MAX_COLUMNS columns
+     */
+    public static void write(Data d, File f) throws IOException
+    {
+        if(d.getInputCount() + 1 > MAX_COLUMNS)
+        {
+            throw new IOException("Too many columns for a .gdat file: "+(d.getInputCount() + 1));
+        }
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        try
+        {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(d.getInputCount() + 1).putInt(0);
+            buffer.putLong(d.size()).putLong(0);
+            for (int column = 0; column < d.getInputCount(); column++)
+            {
+                for (int i = 0; i < d.size(); i++)
+                {
+                    if(!buffer.hasRemaining())
+                    {
+                        flush(channel, buffer);
+                    }
+                    buffer.putDouble(d.getInput(column, i));
+                }
+            }
+            for (int i = 0; i < d.size(); i++)
+            {
+                if(!buffer.hasRemaining())
+                {
+                    flush(channel, buffer);
+                }
+                buffer.putDouble(d.getY(i));
+            }
+            flush(channel, buffer);
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+    /**
+     * Writes everything in the buffer, and empties it.
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    /**
+     * Converts a text data file to a .gdat file.
+     * @param args The text file, and the .gdat file to write
+     */
+    public static void main(String[] args)
+    {
+        if(args.length != 2)
+        {
+            System.out.println("Usage: java tobin.genetic.DataFile in.txt out"+EXTENSION);
+            System.exit(1);
+        }
+        try
+        {
+            Data d = new Data(new File(args[0]));
+            write(d, new File(args[1]));
+            System.out.println("Wrote "+d.size()+" points to "+args[1]);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println("Could not convert: "+ioe.getMessage());
+            System.exit(1);
+        }
+        catch(NumberFormatException nfe)
+        {
+            System.out.println("Could not parse: "+nfe.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package tobin.genetic;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses text data files, with one point on each line and the values split by
+ * tabs or commas.  Every line has the same number of values: the inputs, x1,
+ * x2, and so on, and then the y value.  Each chunk of the file is copied out
+ * of a memory mapping into a byte array in one go, and the numbers are parsed
+ * straight from the bytes, so no Strings are made for the lines or the
+ * numbers.<br>
+ * Big files are split into chunks on line breaks, and the chunks are parsed
+ * at the same time on the given number of threads, then joined into
+ * columns in order.<br>
+ * Numbers with at most 15 or so significant digits and a small exponent,
+ * which is most numbers, are parsed exactly with one multiply or divide.
+ * Anything else, like numbers with more digits, NaN or Infinity, is handed to
+ * Double.parseDouble, so every number parses to exactly the same double as
+ * before, and bad numbers throw the same NumberFormatException.
+ * @author Tobin
+ * @version 1
+ */
+class DataParser
+{
+    /**
+     * Files smaller than this are parsed on the calling thread, in one chunk.
+     */
+    public static final int PARALLEL_SIZE = 1 << 20;
+    /**
+     * The biggest chunk.  Each chunk is copied into an array to be parsed, so
+     * this keeps the arrays small.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 26;
+    private static final int SCAN_SIZE = 4096;
+    private static final long MAX_MANTISSA = 1L << 53;
+    private static final double POWERS_OF_TEN[] = new double[23];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+        {
+            //exact, since every power of ten up to 10^22 is a double
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private DataParser()
+    {
+    }
+    /**
+     * Parses a text data file.
+     * @param f The file
+     * @param threads The number of threads to parse a big file on
+     * @return The columns, the inputs and then the y column
+     * @throws IOException if the file could not be read
+     * @throws NumberFormatException if a number does not parse, or a line
+     * does not have the same number of values as the first line, which must
+     * have at least two
+     */
+    public static double[][] parse(File f, int threads) throws IOException, NumberFormatException
+    {
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try
+        {
+            final FileChannel channel = file.getChannel();
+            long length = channel.size();
+            int columns = countColumns(channel, length);
+            if(length < PARALLEL_SIZE || threads < 2)
+            {
+                return parseChunks(channel, splitChunks(channel, length, 1), columns, null);
+            }
+
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            try
+            {
+                return parseChunks(channel, splitChunks(channel, length, threads * 4), columns, workers);
+            }
+            finally
+            {
+                workers.shutdown();
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+    /**
+     * Parses each chunk, on the workers if there are any, and joins the
+     * columns together in order.
+     */
+    private static double[][] parseChunks(final FileChannel channel, long bounds[], final int columns, ExecutorService workers)
+            throws IOException
+    {
+        int chunks = bounds.length - 1;
+        Chunk parsed[] = new Chunk[chunks];
+        if(workers == null)
+        {
+            for (int i = 0; i < chunks; i++)
+            {
+                parsed[i] = parseChunk(channel, bounds[i], bounds[i + 1], columns);
+            }
+        }
+        else
+        {
+            ArrayList<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+            for (int i = 0; i < chunks; i++)
+            {
+                final long start = bounds[i], end = bounds[i + 1];
+                futures.add(workers.submit(new Callable<Chunk>()
+                {
+                    public Chunk call() throws IOException
+                    {
+                        return parseChunk(channel, start, end, columns);
+                    }
+                }));
+            }
+            try
+            {
+                for (int i = 0; i < chunks; i++)
+                {
+                    parsed[i] = futures.get(i).get();
+                }
+            }
+            catch(InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing");
+            }
+            catch(ExecutionException ee)
+            {
+                Throwable cause = ee.getCause();
+                if(cause instanceof IOException)
+                {
+                    throw (IOException)cause;
+                }
+                if(cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException)cause;
+                }
+                throw new IllegalStateException("A parser failed: "+cause, cause);
+            }
+        }
+
+        long total = 0;
+        for (int i = 0; i < chunks; i++)
+        {
+            total += parsed[i].count;
+        }
+        if(total > Integer.MAX_VALUE)
+        {
+            throw new IOException("Too many points: "+total);
+        }
+        double out[][] = new double[columns][(int)total];
+        int offset = 0;
+        for (int i = 0; i < chunks; i++)
+        {
+            for (int j = 0; j < columns; j++)
+            {
+                System.arraycopy(parsed[i].values[j], 0, out[j], offset, parsed[i].count);
+            }
+            offset += parsed[i].count;
+            parsed[i] = null;
+        }
+        return out;
+    }
+    /**
+     * Counts the values on the first line of the file.  An empty file, or a
+     * first line with only one value, counts as two, so the first line fails
+     * to parse if it does not have a y value.
+     */
+    private static int countColumns(FileChannel channel, long length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        long position = 0;
+        int columns = 1;
+        while(position < length)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0)
+            {
+                break;
+            }
+            for (int i = 0; i < read; i++)
+            {
+                byte b = buffer.get(i);
+                if(b == '\n' || b == '\r')
+                {
+                    return Math.max(columns, 2);
+                }
+                if(b == '\t' || b == ',')
+                {
+                    columns++;
+                }
+            }
+            position += read;
+        }
+        return Math.max(columns, 2);
+    }
+    /**
+     * Splits the file into about the given number of chunks, each of which
+     * starts at the start of a line.
+     * @return The start of each chunk, and then the length of the file
+     */
+    private static long[] splitChunks(FileChannel channel, long length, int chunks) throws IOException
+    {
+        chunks = (int)Math.max(chunks, (length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        long bounds[] = new long[chunks + 1];
+        bounds[chunks] = length;
+        for (int i = 1; i < chunks; i++)
+        {
+            bounds[i] = Math.max(bounds[i - 1], lineStart(channel, length * i / chunks, length));
+        }
+        return bounds;
+    }
+    /**
+     * Finds the first line that starts at or after the given position.  A
+     * line starts after a '\n', or after a '\r' that is not followed by a
+     * '\n', the same as readLine.
+     */
+    private static long lineStart(FileChannel channel, long position, long length) throws IOException
+    {
+        if(position == 0)
+        {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        long bufferStart = position - 1;
+        byte previous = 0;
+        boolean first = true;
+        while(bufferStart < length)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, bufferStart);
+            if(read <= 0)
+            {
+                break;
+            }
+            for (int i = 0; i < read; i++)
+            {
+                byte b = buffer.get(i);
+                if(!first && (previous == '\n' || (previous == '\r' && b != '\n')))
+                {
+                    return bufferStart + i;
+                }
+                previous = b;
+                first = false;
+            }
+            bufferStart += read;
+        }
+        return length;
+    }
+    /**
+     * Parses the lines between the given positions.
+     */
+    private static Chunk parseChunk(FileChannel channel, long start, long end, int columns) throws IOException
+    {
+        Chunk out = new Chunk(columns, (int)((end - start) / (8 * columns) + 16));
+        if(start == end)
+        {
+            return out;
+        }
+        byte bytes[] = new byte[(int)(end - start)];
+        channel.map(FileChannel.MapMode.READ_ONLY, start, end - start).get(bytes);
+        int length = bytes.length;
+        int lineStart = 0;
+        while(lineStart < length)
+        {
+            int lineEnd = lineStart;
+            while(lineEnd < length && bytes[lineEnd] != '\n' && bytes[lineEnd] != '\r')
+            {
+                lineEnd++;
+            }
+
+            out.ensureCapacity();
+            int fieldStart = lineStart;
+            for (int i = 0; i < columns; i++)
+            {
+                int fieldEnd = fieldStart;
+                while(fieldEnd < lineEnd && bytes[fieldEnd] != '\t' && bytes[fieldEnd] != ',')
+                {
+                    fieldEnd++;
+                }
+                //parsed first, so a bad number is reported before a missing one
+                double value = parseDouble(bytes, fieldStart, fieldEnd);
+                if((fieldEnd == lineEnd) != (i == columns - 1))
+                {
+                    throw new NumberFormatException("Expected "+columns+" values: \""+string(bytes, lineStart, lineEnd)+"\"");
+                }
+                out.values[i][out.count] = value;
+                fieldStart = fieldEnd + 1;
+            }
+            out.count++;
+
+            if(lineEnd < length && bytes[lineEnd] == '\r' && lineEnd + 1 < length && bytes[lineEnd + 1] == '\n')
+            {
+                lineEnd++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return out;
+    }
+    /**
+     * Parses a double from the bytes between the given positions, with any
+     * white space around it ignored, the same as Double.parseDouble.
+     */
+    static double parseDouble(byte bytes[], int start, int end)
+    {
+        int i = start, last = end;
+        while(i < last && (bytes[i] & 0xff) <= ' ')
+        {
+            i++;
+        }
+        while(last > i && (bytes[last - 1] & 0xff) <= ' ')
+        {
+            last--;
+        }
+
+        boolean negative = false;
+        if(i < last && (bytes[i] == '-' || bytes[i] == '+'))
+        {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0, significant = 0, exponent = 0;
+        boolean exact = true;
+        for (; i < last && isDigit(bytes[i]); i++, digits++)
+        {
+            if(significant < 18)
+            {
+                mantissa = mantissa * 10 + (bytes[i] - '0');
+                significant += mantissa == 0 ? 0 : 1;
+            }
+            else
+            {
+                exact = false;
+            }
+        }
+        if(i < last && bytes[i] == '.')
+        {
+            for (i++; i < last && isDigit(bytes[i]); i++, digits++)
+            {
+                if(significant < 18)
+                {
+                    mantissa = mantissa * 10 + (bytes[i] - '0');
+                    significant += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                }
+                else
+                {
+                    exact = false;
+                }
+            }
+        }
+        if(digits > 0 && i < last && (bytes[i] == 'e' || bytes[i] == 'E'))
+        {
+            i++;
+            boolean negativeExponent = false;
+            if(i < last && (bytes[i] == '-' || bytes[i] == '+'))
+            {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            int exponentDigits = 0, value = 0;
+            for (; i < last && isDigit(bytes[i]); i++, exponentDigits++)
+            {
+                value = Math.min(value * 10 + (bytes[i] - '0'), 100000);
+            }
+            if(exponentDigits == 0)
+            {
+                exact = false;
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+
+        if(exact && digits > 0 && i == last)
+        {
+            if(mantissa == 0)
+            {
+                return negative ? -0.0 : 0.0;
+            }
+            if(mantissa <= MAX_MANTISSA && exponent >= -22 && exponent <= 22)
+            {
+                //both numbers are exact, so one operation rounds correctly
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+        }
+        return Double.parseDouble(string(bytes, start, end));
+    }
+    private static boolean isDigit(byte b)
+    {
+        return b >= '0' && b <= '9';
+    }
+    /**
+     * Makes a String of the bytes between the given positions, for the
+     * numbers that Double.parseDouble has to parse, and for error messages.
+     */
+    private static String string(byte bytes[], int start, int end)
+    {
+        char chars[] = new char[end - start];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char)(bytes[start + i] & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The points parsed from one chunk.
+     */
+    private static class Chunk
+    {
+        double values[][];
+        int count = 0;
+
+        Chunk(int columns, int capacity)
+        {
+            values = new double[columns][capacity];
+        }
+        /**
+         * Makes sure there is room for one more point.
+         */
+        void ensureCapacity()
+        {
+            if(count == values[0].length)
+            {
+                for (int i = 0; i < values.length; i++)
+                {
+                    double grown[] = new double[count * 2];
+                    System.arraycopy(values[i], 0, grown, 0, count);
+                    values[i] = grown;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package tobin.genetic;
+
+/**
+ * Calculates the fitness of a genome.  The fitness is the sum of the squared
+ * differences between the equation and each data point, when the variables
+ * in the equation are set to the values in the genome.  Lower is better.
+ * There are several ways to evaluate the equation, and each one implements
+ * this interface so candidates do not need to know which one is used.
+ * @author Tobin
+ * @version 1
+ */
+public interface FitnessFunction
+{
+    /**
+     * Calculates the fitness of the given genome.
+     * @param genes The array the genome is in, which is usually a row of the
+     * gene matrix of a <tt>Population</tt>
+     * @param offset The index of the first gene of the genome.  The genes are
+     * the values of the variables in the equation, in the same order as
+     * <tt>VariableMap.getVariables</tt>, so the value at offset + i goes in
+     * slot <tt>VariableMap.FIRST_PARAMETER_SLOT + i</tt>
+     * @return The total squared error over the data
+     */
+    public double calculateFitness(double genes[], int offset);
+    /**
+     * Calculates the part of the fitness of the given genome that comes from
+     * a range of the data.  The fitness is the sum of these parts over any
+     * split of the data into ranges, up to rounding.
+     * @param genes The array the genome is in
+     * @param offset The index of the first gene of the genome
+     * @param start The index of the first data point to use
+     * @param end The index after the last data point to use
+     * @return The total squared error over the range
+     */
+    public double calculateFitness(double genes[], int offset, int start, int end);
+    /**
+     * Gets the number of data points the fitness is calculated over.
+     * @return The number of data points
+     */
+    public int size();
+}
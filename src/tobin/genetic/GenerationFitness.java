@@ -0,0 +1,25 @@
+package tobin.genetic;
+
+/**
+ * A fitness function that can score many genomes in one pass over the data,
+ * like all of the children of a generation.  The fitness of each genome is
+ * exactly what calculateFitness would give it on its own.
+ * @author Tobin
+ * @version 1
+ */
+public interface GenerationFitness extends FitnessFunction
+{
+    /**
+     * Calculates the fitness of many genomes in one pass over the data.  The
+     * genomes are rows of a gene matrix, like the one in a
+     * <tt>Population</tt>.
+     * @param genes The gene matrix, with row i starting at index
+     * i * geneCount
+     * @param geneCount The number of genes in each row
+     * @param first The first row to score
+     * @param count The number of rows to score
+     * @param fitness Where to put the fitness of each row, at the same index
+     * as the row
+     */
+    public void calculateFitness(double genes[], int geneCount, int first, int count, double fitness[]);
+}
@@ -1,9 +1,17 @@
 package tobin.genetic;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import tobin.equation.CommonSubexpressions;
+import tobin.equation.EquationProgram;
 import tobin.equation.Node;
+import tobin.equation.Simplifier;
 import tobin.gui.ProgressFrame;
 
 /**
@@ -16,25 +24,60 @@ import tobin.gui.ProgressFrame;
  * population size.  A new loop begins, and the most fit members of the
  * population tend to be chosen to reproduce to make the new members of the
  * population.  There is some randomness in the selection of parents to
- * maintain diversity in the population.
+ * maintain diversity in the population.<br>
+ * The population is a <tt>Population</tt>, a matrix of genes with room for
+ * the children, so the children are crossed over and mutated in place in
+ * their rows, and no object is made for each candidate.  The survivors are
+ * already sorted, so each generation only sorts its children and merges them
+ * in.<br>
+ * Everything that can be tuned, the population size, the number of children,
+ * the selectivity, the mutation rate, the threads, and when to stop, is set
+ * by a <tt>GeneticConfig</tt>.<br>
+ * A Genetic can also be one of the islands of an <tt>IslandModel</tt>, in
+ * which case it sends its best members to the next island every few
+ * generations, and takes in the ones the last island sent it.<br>
+ * The data is not released when the run ends, since the candidates can still
+ * be scored on it.  Whoever made the data releases it once they are done.
  * @author Tobin
  * @version 1
  */
 public class Genetic implements Runnable
 {
     private static final long serialVersionUID = 1L;
-    public static final int POPULATION_SIZE = 1000;
-    public static final int ITERATIONS_TO_EXIT = 30;
-    public static final double SELECTIVITY = .05,/* VARIABILITY = .001, */MUTATION_RATE = 1;
+    /**
+     * The number of children each task makes.  The children are split into
+     * tasks the same way no matter how many threads there are, and each task
+     * has its own random number generator seeded from the seed, the
+     * generation, and the task, so the same seed always gives the same
+     * result.
+     */
+    public static final int CHILDREN_PER_TASK = 25;
+    /**
+     * The number of data points at which each candidate is scored by all of
+     * the threads at once, a chunk of the data each, instead of each thread
+     * scoring its own candidates.  At this size the data does not fit in the
+     * cache, so it is faster for the threads to share one pass over it.
+     */
+    public static final int DATA_PARALLEL_SIZE = 1 << 20;
 
     public double variability = 1, lastBest;
     public int exitCounter = 0;
     
-    private ArrayList<Candidate> population = new ArrayList<Candidate>(POPULATION_SIZE * 3 / 2);
+    private final GeneticConfig config;
+    private final int populationSize, children, threads;
+    private final boolean stream;
+    private Population population;
+    private String keys[];
     private Data data;
     private Node equation;
-    private VariableMap variableMap;
+    private GenerationFitness fitnessFunction, exactFitnessFunction;
     private ProgressFrame progress;
+    private ExecutorService workers;
+    private boolean dataParallel;
+    private long seed;
+    private volatile int generation = 0;
+    private ArrayList<Callable<Void>> childTasks;
+    private final IslandModel.Island island;
     /**
      * Makes a new Genetic object, with all data and population initialized.
      * For the algorithm to start the thread needs to be stared.
@@ -46,77 +89,368 @@ public class Genetic implements Runnable
      * population from
      * @param title The title of the progress frame.
      * @param text The initial text of the progress frame.
+     * @throws IllegalArgumentException if the equation uses more inputs than
+     * the data has, the population is too big for the number of variables,
+     * or a system property is not a valid setting
      */
     public Genetic(Data d, Node equation, VariableMap v, Guess guess, String title, String text)
     {
+        this(d, equation, v, guess, title, text, new GeneticConfig());
+    }
+    /**
+     * Makes a new Genetic object, with all data and population initialized,
+     * using the given settings.  The settings are copied, so changing them
+     * afterwards does not change this run.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation to
+     * modulate to try to make the equation fit the data
+     * @param guess The guess provided by the user to generate the initial
+     * population from
+     * @param title The title of the progress frame.
+     * @param text The initial text of the progress frame.
+     * @param config The settings of the algorithm
+     * @throws IllegalArgumentException if the equation uses more inputs than
+     * the data has, or the population is too big for the number of variables
+     */
+    public Genetic(Data d, Node equation, VariableMap v, Guess guess, String title, String text, GeneticConfig config)
+    {
+        this(d, equation, v, guess, config, new ProgressFrame(title, text), null);
+    }
+    /**
+     * Makes a new Genetic object that does not show a progress frame, for
+     * running without a window.  The result can be gotten with getCandidate
+     * once it has run.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation to
+     * modulate to try to make the equation fit the data
+     * @param guess The guess provided by the user to generate the initial
+     * population from
+     * @param config The settings of the algorithm
+     * @throws IllegalArgumentException if the equation uses more inputs than
+     * the data has, or the population is too big for the number of variables
+     */
+    public Genetic(Data d, Node equation, VariableMap v, Guess guess, GeneticConfig config)
+    {
+        this(d, equation, v, guess, config, null, null);
+    }
+    /**
+     * Makes a new Genetic object that is one island of an island model.  It
+     * does not show a progress frame.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation
+     * @param guess The guess to generate the initial population from
+     * @param config The settings of this island
+     * @param island The island, which the migrants are sent through
+     */
+    Genetic(Data d, Node equation, VariableMap v, Guess guess, GeneticConfig config, IslandModel.Island island)
+    {
+        this(d, equation, v, guess, config, null, island);
+    }
+    /**
+     * Makes a new Genetic object.
+     * @param progress The progress frame to show, or null for none
+     * @param island The island this is, or null if it is on its own
+     */
+    private Genetic(Data d, Node equation, VariableMap v, Guess guess, GeneticConfig config, ProgressFrame progress,
+            IslandModel.Island island)
+    {
+        if(v.getInputCount() > d.getInputCount())
+        {
+            throw new IllegalArgumentException("The equation uses x"+v.getInputCount()+", but the data only has "+d.getInputCount()+" inputs");
+        }
+        config.checkCapacity(v.getVariables().length);
         data = d;
         this.equation = equation;
-        variableMap = v;
+        this.config = new GeneticConfig(config);
+        populationSize = this.config.getPopulationSize();
+        children = this.config.getChildCount();
+        threads = this.config.getThreads();
+        stream = this.config.isStream();
+        this.island = island;
 
-        progress = new ProgressFrame(title, text);
-        progress.setVisible(true);
+        this.progress = progress;
+        if(progress != null)
+        {
+            progress.setVisible(true);
+        }
+
+        seed = this.config.getSeed() == null ? System.nanoTime() : this.config.getSeed().longValue();
+        System.out.println("Seed: "+seed+", threads: "+threads);
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+        {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "Genetic Worker " + count++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        if(stream)
+        {
+            Node streamed = CommonSubexpressions.share(Simplifier.simplify(equation));
+            System.out.println("Simplified equation: "+streamed);
+            System.out.println("Streaming the data in blocks");
+            dataParallel = true;
+            ExecutorService chunkWorkers = threads > 1 ? workers : null;
+            int blockSize = this.config.getStreamBlockSize(), readAhead = this.config.getReadAhead();
+            exactFitnessFunction = new StreamingFitness(streamed, d, v, false, chunkWorkers, blockSize, readAhead);
+            fitnessFunction = this.config.isFastMath() ?
+                    new StreamingFitness(streamed, d, v, true, chunkWorkers, blockSize, readAhead) : exactFitnessFunction;
+        }
+        else
+        {
+            FitnessFunction exact = makeFitnessFunction(d, equation, v, this.config.getColumnCacheBytes());
+            FitnessFunction fast = this.config.isFastMath() ? makeFastFitnessFunction(exact) : exact;
+            dataParallel = useDataParallel(d.size());
+            System.out.println(dataParallel ? "Scoring each candidate on all threads" : "Scoring candidates in parallel");
+            ExecutorService chunkWorkers = dataParallel ? workers : null;
+            exactFitnessFunction = new ChunkedFitness(exact, chunkWorkers);
+            fitnessFunction = fast == exact ? exactFitnessFunction : new ChunkedFitness(fast, chunkWorkers);
+        }
 
-        String[] vars = v.getVariables();
-        if(vars.length == 0)
+        keys = v.getVariables();
+        if(keys.length == 0)
         {
             System.out.println("No variables");
-            System.out.println(new Candidate(new KeyValue[0], d, equation, v));
+            System.out.println(new Candidate(keys, new double[0], equation, exactFitnessFunction));
             System.exit(0);
         }
 
-        createPopulation(guess, d, equation, v);
+        population = new Population(keys, populationSize + children);
+        createPopulation(guess);
+    }
+    /**
+     * Decides if each candidate should be scored by all of the threads at
+     * once, instead of each thread scoring its own candidates.  This is done
+     * if the data is bigger than DATA_PARALLEL_SIZE, or if there are more
+     * threads than tasks in a generation, as long as the data is big enough
+     * to be split into more than one chunk.
+     * @param size The number of data points
+     * @return If the data should be split between the threads
+     */
+    private boolean useDataParallel(int size)
+    {
+        int tasks = (children + CHILDREN_PER_TASK - 1) / CHILDREN_PER_TASK;
+        return threads > 1 && size > ChunkedFitness.CHUNK_SIZE && (size >= DATA_PARALLEL_SIZE || tasks < threads);
+    }
+    /**
+     * Makes the fitness function used to evaluate every candidate.  The
+     * equation is simplified, its repeated subexpressions are shared, the
+     * parts that only depend on the data are computed ahead of time, and then
+     * it is compiled, and a kernel is generated for it.  If the kernel
+     * can not be generated, or the equation can not be compiled, then the
+     * tree is evaluated a block of data points at a time instead.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation
+     * @param columnCacheBytes The most memory the column cache can use
+     * @return The fitness function
+     */
+    private static FitnessFunction makeFitnessFunction(Data d, Node equation, VariableMap v, long columnCacheBytes)
+    {
+        equation = CommonSubexpressions.share(Simplifier.simplify(equation));
+        System.out.println("Simplified equation: "+equation);
+        equation = ColumnCache.cache(equation, d, v, columnCacheBytes);
+        try
+        {
+            return new KernelFitness(EquationProgram.compile(equation), d, v);
+        }
+        catch(IllegalArgumentException iae)
+        {
+            System.out.println("Could not compile equation, evaluating the tree: "+iae.getMessage());
+        }
+        catch(IllegalStateException ise)
+        {
+            System.out.println("Could not generate kernel, evaluating the tree: "+ise.getMessage());
+        }
+        return new BatchFitness(equation, d, v);
+    }
+    /**
+     * Makes a fitness function that uses fast math from the exact one.  Only
+     * generated kernels can use fast math, so if the exact function is not a
+     * kernel it is used as is.
+     * @param exact The exact fitness function
+     * @return The fast fitness function
+     */
+    private static FitnessFunction makeFastFitnessFunction(FitnessFunction exact)
+    {
+        if(!(exact instanceof KernelFitness))
+        {
+            System.out.println("Fast math needs a kernel, using exact math");
+            return exact;
+        }
+        try
+        {
+            return ((KernelFitness)exact).withFastMath();
+        }
+        catch(IllegalStateException ise)
+        {
+            System.out.println("Could not generate fast kernel, using exact math: "+ise.getMessage());
+        }
+        return exact;
+    }
+    /**
+     * Scores the best candidates again with exact math, and sorts them, so
+     * the fitness that is reported is exact.  This only does something if
+     * fast math was used.  The elites are the candidates that are most likely
+     * to be chosen as parents, the top selectivity of the population, since
+     * a candidate below them can not have been ranked much too low by the
+     * small error of fast math.
+     */
+    private void rescoreElites()
+    {
+        if(fitnessFunction == exactFitnessFunction)
+        {
+            return;
+        }
+        int elites = Math.max(1, (int)(population.size() * config.getSelectivity()));
+        for (int i = 0; i < elites; i++)
+        {
+            population.setFitness(i, exactFitnessFunction.calculateFitness(population.getGenes(), i * keys.length));
+        }
+        population.sort(0, elites);
     }
     /**
      * The loop that executes the algorithm.  Loops the cycle of generating
      * new members of the population, mutating and sorting them until there
-     * is no change in the fitness of the best member for ITERATIONS_TO_EXIT
-     * iterations, and then exits.  During each iteration, if there was no
+     * is no change in the fitness of the best member for more than the
+     * iterations to exit of the config, or one of its other stopping rules is
+     * met, and then exits.  During each iteration, if there was no
      * change in fitness from the last iteration the variability is divided by
      * 2, and if there is then it is multiplied by 5/4 to scale the mutation
-     * rate to improve the efficiency of the algorithm.
+     * rate to improve the efficiency of the algorithm.  An island migrates
+     * every migration interval generations.<br>
+     * When the run is over, even if it failed, the workers are shut down,
+     * and an island is marked as finished, so the other islands stop sending
+     * migrants to it.
      */
     public void run()
     {
-        Collections.sort(population);
+        try
+        {
+            evolve();
+        }
+        finally
+        {
+            workers.shutdown();
+            if(stream)
+            {
+                ((StreamingFitness)exactFitnessFunction).close();
+                if(fitnessFunction != exactFitnessFunction)
+                {
+                    ((StreamingFitness)fitnessFunction).close();
+                }
+            }
+            if(island != null)
+            {
+                island.finish();
+            }
+        }
+        System.out.println("ending thread");
+    }
+    /**
+     * Runs generations until one of the stopping rules is met.
+     */
+    private void evolve()
+    {
+        population.sort();
 
-        lastBest = population.get(0).getFitness();
+        lastBest = population.getFitness(0);
         
-//        System.out.println(population.get(0).getFitness()+", "+population.get(population.size() - 1).getFitness());
+//        System.out.println(population.getFitness(0)+", "+population.getFitness(population.size() - 1));
 
         for(int i = 0;; i++)
         {
             makeNewGeneration();
-            Collections.sort(population);
             
-            double best = population.get(0).getFitness();
+            double best = population.getFitness(0);
             if(best == lastBest)
             {
                 variability *= 1 / 2.0;
 		exitCounter++;
-		if(exitCounter > ITERATIONS_TO_EXIT)
-		{
-		    progress.setText("Fitness: " + population.get(0).getFitness() + "\tDone\n" + population.get(0).getFriendlyString());
-		    break;
-		}
             }
             else
             {
                 variability *= 5 / 4.0;
 		exitCounter = 0;
-		if(progress != null)
-		{
-		    progress.setText("Fitness: " + population.get(0).getFitness() + "\n" + population.get(0).getFriendlyString());
-		}
             }
-            lastBest = population.get(0).getFitness();
+            if(isFinished(i + 1, best))
+            {
+                rescoreElites();
+                if(progress != null)
+                {
+                    progress.setText("Fitness: " + population.getFitness(0) + "\tDone\n" + getCandidate(0).getFriendlyString());
+                }
+                break;
+            }
+            if(exitCounter == 0 && progress != null)
+            {
+                progress.setText("Fitness: " + population.getFitness(0) + "\n" + getCandidate(0).getFriendlyString());
+            }
+            lastBest = population.getFitness(0);
 
             double deviation = getStDev();
 //            System.out.println(getPopString());
-	    System.out.println(i+"\tMax:\t"+population.get(0).toString()+"\tVar:\t"+variability+"\tDev:\t"+deviation);
+	    System.out.println(i+"\tMax:\t"+getCandidate(0)+"\tVar:\t"+variability+"\tDev:\t"+deviation);
             trimPopulation();
+            if(island != null && (i + 1) % config.getMigrationInterval() == 0)
+            {
+                migrate();
+            }
+        }
+    }
+    /**
+     * Sends copies of the best members to the next island, and takes in the
+     * members the last island sent.  The migrants are put in the child rows
+     * and merged in like children, with the fitness they were sent with, and
+     * then the population is trimmed again, so they replace the worst
+     * members.  At most as many migrants as children are taken in, and the
+     * rest are dropped.
+     */
+    private void migrate()
+    {
+        for (int i = 0; i < config.getMigrants() && i < population.size(); i++)
+        {
+            island.send(getCandidate(i));
         }
 
-        System.out.println("ending thread");
+        int first = population.size(), count = 0;
+        Candidate migrant;
+        while((migrant = island.receive()) != null)
+        {
+            if(count < children)
+            {
+                System.arraycopy(migrant.getGenome(), 0, population.getGenes(), (first + count) * keys.length, keys.length);
+                population.setFitness(first + count, migrant.getFitness());
+                count++;
+            }
+        }
+        if(count > 0)
+        {
+            population.setSize(first + count);
+            population.mergeChildren(first);
+            trimPopulation();
+        }
+    }
+    /**
+     * Checks the stopping rules of the config.  The run is finished when the
+     * best fitness has not changed for more than the iterations to exit, when
+     * there have been the most generations, or when the best fitness is at or
+     * below the target.
+     * @param generations The number of generations so far
+     * @param best The best fitness
+     * @return If the run is finished
+     */
+    private boolean isFinished(int generations, double best)
+    {
+        return exitCounter > config.getIterationsToExit()
+                || (config.getMaxGenerations() > 0 && generations >= config.getMaxGenerations())
+                || best <= config.getTargetFitness();
     }
     /**
      * Generates a list of the entire population.  Each member of the
@@ -125,101 +459,210 @@ public class Genetic implements Runnable
      */
     public String getPopString()
     {
-        boolean virgin = true;
-        String out = "["+population.get(0);
-        for(Candidate c : population)
+        String out = "["+getCandidate(0);
+        for (int i = 1; i < population.size(); i++)
         {
-            if(virgin)
-            {
-                virgin = false;
-                continue;
-            }
-
-            out += ", " + c;
+            out += ", " + getCandidate(i);
         }
         return out + "]";
     }
+    /**
+     * Makes a candidate for one member of the population, to show it.
+     * @param member The index of the member
+     * @return The candidate, with a copy of the genome of the member
+     */
+    public Candidate getCandidate(int member)
+    {
+        return new Candidate(keys, population.getGenome(member), population.getFitness(member), equation, fitnessFunction);
+    }
     /**
      * Generates the children for the next generation.  Will keep all of the
      * old population as well.  This may create duplicates, but I don't care.
-     * The final result of this method is the population list having 1.5 more
-     * entries, which are the children for the next generation.  The list is
-     * no longer sorted.
+     * The final result of this method is the population having the offspring
+     * ratio of the config more members, which are the children for the next
+     * generation, merged into the old population so it is still sorted.  The
+     * children are made CHILDREN_PER_TASK at a time by the child tasks, which
+     * are made once and always write the same rows, after the old
+     * population.<br>
+     * Once the run has started nothing here allocates, except for what the
+     * executor needs to hand the tasks to the workers when there is more
+     * than one thread.  The children are made in place in the child rows,
+     * and merging them in swaps the gene matrix with the spare one, so the
+     * two matrices take turns being the population.  It is package private
+     * so the tests can check that.
      */
-    private void makeNewGeneration()
+    void makeNewGeneration()
     {
 //        System.out.println(">>Making a new generation");
-        Random r = new Random();
-        ArrayList<Candidate> children = new ArrayList<Candidate>(POPULATION_SIZE / 2);
+        generation++;
+        int first = population.size();
+        population.setSize(first + children);
+        if(childTasks == null)
+        {
+            childTasks = new ArrayList<Callable<Void>>();
+            for (int start = 0; start < children; start += CHILDREN_PER_TASK)
+            {
+                childTasks.add(new ChildTask(start / CHILDREN_PER_TASK, first + start, Math.min(CHILDREN_PER_TASK, children - start)));
+            }
+        }
 
-        for (int i = 0; i < POPULATION_SIZE / 2; i++)
+        runTasks(childTasks);
+        if(stream)
         {
-            int a = (int)(Math.abs(r.nextGaussian() * POPULATION_SIZE * SELECTIVITY) % POPULATION_SIZE), b;
+            score(first, children);
+        }
+        population.mergeChildren(first);
+    }
+    /**
+     * Makes some children from the current population, in their rows of the
+     * gene matrix.  The parents are chosen and crossed over, and the children
+     * are mutated.  This may be called by the worker threads, which only read
+     * the rows of the population, and write the rows of their own children.
+     * @param first The row of the first child
+     * @param count The number of children to make
+     * @param r The random number generator of this task
+     */
+    private void makeChildren(int first, int count, Random r)
+    {
+        double genes[] = population.getGenes();
+        int length = keys.length;
+        double selectivity = config.getSelectivity();
+
+        for (int i = 0; i < count; i++)
+        {
+            int a = (int)(Math.abs(r.nextGaussian() * populationSize * selectivity) % populationSize), b;
             do
             {
-                b = (int)(Math.abs(r.nextGaussian() * POPULATION_SIZE  * SELECTIVITY) % POPULATION_SIZE);
+                b = (int)(Math.abs(r.nextGaussian() * populationSize  * selectivity) % populationSize);
             }while(b == a);
 
 //            System.out.print(a+"\t"+b);
 
-            KeyValue genome[] = population.get(a).getGenome().clone();
-//            System.out.println("A: "+Arrays.toString(genome));
-            KeyValue genomeB[] = population.get(b).getGenome().clone();
-//            System.out.println("B: "+Arrays.toString(genomeB));
-            System.arraycopy(genomeB, genome.length / 2, genome, genome.length / 2, genome.length / 2);
-//            System.out.println("Out: "+Arrays.toString(genome));
-
-            Candidate c = new Candidate(genome, data, equation, variableMap);
-            children.add(c);
-
-//            System.out.println("\t"+c);
+            int child = (first + i) * length;
+            System.arraycopy(genes, a * length, genes, child, length);
+            System.arraycopy(genes, b * length + length / 2, genes, child + length / 2, length / 2);
         }
 
-        doMutation(children);
-
-        while(children.size() > 0)
-        {
-            population.add(children.remove(0));
-        }
+        doMutation(first, count, r);
     }
     /**
-     * Mutates the population.  Mutations are done in random places, so if a
-     * member of the population has been mutated there is no guarantee it
-     * will not be mutated again.  The number of mutations this method does
-     * is the population size times the mutation rate.  The number being
-     * mutated each time is added to a random z distributed number times the
-     * variability times the original value.
-     * @param list The list of candidates to mutate
+     * Scores some members of the population together, so the data is only
+     * read once for all of them, and stores their fitness.
+     * @param first The first member to score
+     * @param count The number of members
      */
-    private void doMutation(ArrayList<Candidate> list)
+    private void score(int first, int count)
     {
-        Random r = new Random();
-
-        for (int i = 0; i < list.size() * MUTATION_RATE; i++)
+        fitnessFunction.calculateFitness(population.getGenes(), keys.length, first, count, population.getFitnesses());
+    }
+    /**
+     * Mutates the genomes of the children.  Mutations are done in random
+     * places, so if a genome has been mutated there is no guarantee it will
+     * not be mutated again.  The number of mutations this method does is the
+     * number of genomes times the mutation rate.  The number being mutated
+     * each time is added to a random z distributed number times the
+     * variability times the original value.  This is done before the
+     * children are scored, so their fitness is the fitness of the mutated
+     * genome.  The genes are changed in place in the gene matrix.
+     * @param first The row of the first genome to mutate
+     * @param count The number of genomes to mutate
+     * @param r The random number generator to use
+     */
+    private void doMutation(int first, int count, Random r)
+    {
+        double genes[] = population.getGenes();
+        for (int i = 0; i < count * config.getMutationRate(); i++)
         {
-            KeyValue genome[] = list.get((int)(r.nextDouble() * list.size())).getGenome();
-            int index = (int)(r.nextDouble() * genome.length);
-            double value = genome[index].getValue();
-            String key = genome[index].getKey();
+            int member = first + (int)(r.nextDouble() * count);
+            int index = member * keys.length + (int)(r.nextDouble() * keys.length);
+            double value = genes[index];
 //            System.out.print("value: "+value);
             double mutation = (r.nextGaussian() * variability * value);
 //            System.out.println("Mutation: "+mutation);
             value += mutation;
-            genome[index] = new KeyValue(key, value);
+            genes[index] = value;
 //            System.out.println(", new value: "+value);
         }
     }
+    /**
+     * Gets the random number generator for one task.  It only depends on the
+     * seed of the run, the generation, and the task, so the same task always
+     * gets the same numbers no matter which thread runs it.
+     * @param generation The generation, which is 0 for the initial population
+     * @param task The index of the task in the generation
+     * @return The random number generator
+     */
+    private Random getRandom(int generation, int task)
+    {
+        return new Random(getSeed(generation, task));
+    }
+    /**
+     * Gets the seed of the random number generator for one task.
+     * @param generation The generation, which is 0 for the initial population
+     * @param task The index of the task in the generation
+     * @return The seed
+     */
+    private long getSeed(int generation, int task)
+    {
+        return seed ^ (generation * 0x9E3779B97F4A7C15L) ^ (task * 0xC2B2AE3D27D4EB4FL);
+    }
+    /**
+     * Runs all of the tasks, and waits for them to finish.  Each task runs on
+     * a worker thread, unless each candidate is scored on all of the threads,
+     * in which case the tasks are run one after another on this thread, and
+     * the workers score the chunks of the data.  With only one thread the
+     * tasks are also run on this thread, since handing them to the one
+     * worker would only make the executor allocate.
+     * @param tasks The tasks
+     * @throws IllegalStateException if a task failed or the thread was
+     * interrupted
+     */
+    private void runTasks(ArrayList<Callable<Void>> tasks)
+    {
+        try
+        {
+            if(dataParallel || threads == 1)
+            {
+                for (int i = 0; i < tasks.size(); i++)
+                {
+                    tasks.get(i).call();
+                }
+            }
+            else
+            {
+                for(Future<Void> task : workers.invokeAll(tasks))
+                {
+                    task.get();
+                }
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers");
+        }
+        catch(ExecutionException ee)
+        {
+            throw new IllegalStateException("A worker failed: "+ee.getCause(), ee.getCause());
+        }
+        catch(RuntimeException re)
+        {
+            throw re;
+        }
+        catch(Exception e)
+        {
+            throw new IllegalStateException("A task failed: "+e, e);
+        }
+    }
     /**
      * Removes the last members of the population, until the size is right.
      * This is used to trim the population after the new generation has been
-     * created, and the entire population sorted.
+     * created, and the entire population sorted.  The rows are not cleared,
+     * the next children are just made over them.
      */
     public void trimPopulation()
     {
-        while(population.size() > POPULATION_SIZE)
-        {
-            population.remove(population.size() - 1);
-        }
+        population.setSize(Math.min(population.size(), populationSize));
     }
     /**
      * Removes all whitespace from the given string.  The given string is not
@@ -244,20 +687,39 @@ public class Genetic implements Runnable
     }
     /**
      * Makes the initial population from the guess.  Uses the
-     * getRandomizedGuess method to fill the list with random guesses.
+     * getRandomizedGenome method to fill the rows with random guesses.
      * @param guess The guess the user made at the solution used to generate
      * the initial population
-     * @param d The data needed by the new candidates to calculate their
-     * fitness
-     * @param equation The equation to find the solution for
-     * @param v The variable map containing the variables to modulate to find
-     * the best fit for the equation
      */
-    private void createPopulation(Guess guess, Data d, Node equation, VariableMap v)
+    private void createPopulation(final Guess guess)
     {
-        for (int i = 0; i < POPULATION_SIZE; i++)
+        population.setSize(populationSize);
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int start = 0; start < populationSize; start += CHILDREN_PER_TASK)
+        {
+            final int row = start, count = Math.min(CHILDREN_PER_TASK, populationSize - start);
+            final Random r = getRandom(0, start / CHILDREN_PER_TASK);
+            tasks.add(new Callable<Void>()
+            {
+                public Void call()
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        getRandomizedGenome(guess, r, population.getGenes(), (row + i) * keys.length);
+                    }
+                    if(!stream)
+                    {
+                        score(row, count);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        runTasks(tasks);
+        if(stream)
         {
-            population.add(getRandomizedGuess(guess, d, equation, v));
+            score(0, populationSize);
         }
     }
     /**
@@ -265,26 +727,31 @@ public class Genetic implements Runnable
      * @param guess The guess that gives the range that the random guess
      * should be in.  It gives both the values, and the standard deviations
      * of the random guess.
-     * @param d The data that is used when evaluating the new Candidate.
-     * @param equation The equation that is used when evaluating the new
-     * Candidate.
-     * @param v The variable map that is used when evaluating the new
-     * Candidate.
      * @return The randomized Candidate.
      */
-    public Candidate getRandomizedGuess(Guess guess, Data d, Node equation, VariableMap v)
+    public Candidate getRandomizedGuess(Guess guess)
+    {
+        double genome[] = new double[keys.length];
+        getRandomizedGenome(guess, new Random(), genome, 0);
+        return new Candidate(keys, genome, equation, fitnessFunction);
+    }
+    /**
+     * Makes a genome that is close to the one in the guess, using the given
+     * random number generator.
+     * @param guess The guess that gives the range that the random genome
+     * should be in
+     * @param r The random number generator to use
+     * @param out The array to put the genome in, usually the gene matrix
+     * @param offset The index to put the first gene at
+     */
+    private void getRandomizedGenome(Guess guess, Random r, double out[], int offset)
     {
-        Random r = new Random();
         KeyValue in[] = guess.getGenome();
-        KeyValue out[] = new KeyValue[in.length];
 
-        for(int i = 0; i < out.length; i++)
+        for(int i = 0; i < in.length; i++)
         {
-            double value = r.nextGaussian() * guess.getDeviations()[i] + in[i].getValue();
-            out[i] = new KeyValue(in[i].getKey(), value);
+            out[offset + i] = r.nextGaussian() * guess.getDeviations()[i] + in[i].getValue();
         }
-
-        return new Candidate(out, d, equation, v);
     }
     /**
      * Gets the standard deviation of the fitness of the population.
@@ -293,18 +760,53 @@ public class Genetic implements Runnable
     private double getStDev()
     {
         double mean = 0;
-        for(Candidate c : population)
+        for (int i = 0; i < population.size(); i++)
         {
-            mean += c.getFitness();
+            mean += population.getFitness(i);
         }
         mean /= population.size();
 
         double out = 0;
-        for(Candidate c : population)
+        for (int i = 0; i < population.size(); i++)
         {
-            out += (c.getFitness() - mean)*(c.getFitness() - mean);
+            out += (population.getFitness(i) - mean)*(population.getFitness(i) - mean);
         }
         out /= population.size();
         return Math.sqrt(out);
     }
-}
\ No newline at end of file
+
+    /**
+     * One of the tasks that make the children of each generation.  It is made
+     * once, and reused every generation, with its random number generator
+     * reseeded for the generation, which gives the same numbers as a new one
+     * with the same seed would.
+     */
+    private class ChildTask implements Callable<Void>
+    {
+        private final int task, row, count;
+        private final Random random = new Random();
+        /**
+         * Makes a new child task.
+         * @param task The index of the task in the generation
+         * @param row The row of its first child
+         * @param count The number of children it makes
+         */
+        private ChildTask(int task, int row, int count)
+        {
+            this.task = task;
+            this.row = row;
+            this.count = count;
+        }
+
+        public Void call()
+        {
+            random.setSeed(getSeed(generation, task));
+            makeChildren(row, count, random);
+            if(!stream)
+            {
+                score(row, count);
+            }
+            return null;
+        }
+    }
+}
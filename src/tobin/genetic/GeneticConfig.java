@@ -0,0 +1,676 @@
+package tobin.genetic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Properties;
+
+/**
+ * The settings of the genetic algorithm, so they can be changed without
+ * recompiling.  Different data needs very different settings to be solved
+ * quickly, so every setting can be set in code, from a properties file, or
+ * from the command line.  Each setting has a name, which is the key in a
+ * properties file, the flag <tt>--name=value</tt> on the command line, and
+ * the system property <tt>-Dtobin.name=value</tt>.<br>
+ * A new config starts with the defaults, and then any system properties that
+ * are set, so the old <tt>-Dtobin.threads</tt> style flags still work.  The
+ * settings are:<br>
+ * populationSize: the number of members kept after each generation, 1000<br>
+ * offspringRatio: the number of children made each generation, as a
+ * fraction of the population size, .5<br>
+ * selectivity: how much the best members are chosen as parents.  Parents are
+ * mostly chosen from this fraction of the population, so smaller is more
+ * selective, .05<br>
+ * mutationRate: the number of mutations for each child, 1<br>
+ * threads: the number of threads that make and score children, one per
+ * processor<br>
+ * iterationsToExit: the run stops after the best fitness has not changed for
+ * more than this many generations, 30<br>
+ * maxGenerations: the run stops after this many generations, or never if it
+ * is 0, 0<br>
+ * targetFitness: the run stops once the best fitness is at or below this,
+ * -Infinity<br>
+ * seed: the seed of the random numbers, or the time if it is not set<br>
+ * fastMath: if FastMath is used while the algorithm runs, false<br>
+ * stream: if the data is streamed through blocks by StreamingFitness,
+ * false<br>
+ * offHeap: if text data is moved outside of the heap once it is parsed,
+ * false<br>
+ * columnCacheBytes: the most memory ColumnCache can use, 64 MB<br>
+ * streamBlockSize: the number of points in each block when streaming,
+ * 1048576<br>
+ * readAhead: the number of blocks the reader can get ahead when streaming,
+ * 2<br>
+ * islands: the number of populations run at once by <tt>IslandModel</tt>,
+ * 1<br>
+ * migrationInterval: the number of generations between migrations from one
+ * island to the next, 10<br>
+ * migrants: the number of best members each island sends at a migration,
+ * 5<br>
+ * A config is copied when a run starts, so changing it does not change a run
+ * that is going.
+ * @author Tobin
+ * @version 1
+ */
+public class GeneticConfig
+{
+    public static final String PROPERTY_PREFIX = "tobin.";
+    /**
+     * The flag on the command line that loads a properties file.
+     */
+    public static final String CONFIG_FLAG = "config";
+    /**
+     * The names of all of the settings.
+     */
+    public static final String NAMES[] = {"populationSize", "offspringRatio", "selectivity", "mutationRate",
+        "threads", "iterationsToExit", "maxGenerations", "targetFitness", "seed", "fastMath", "stream", "offHeap",
+        "columnCacheBytes", "streamBlockSize", "readAhead", "islands", "migrationInterval", "migrants"};
+
+    private int populationSize = 1000;
+    private double offspringRatio = .5;
+    private double selectivity = .05;
+    private double mutationRate = 1;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int iterationsToExit = 30;
+    private int maxGenerations = 0;
+    private double targetFitness = Double.NEGATIVE_INFINITY;
+    private Long seed = null;
+    private boolean fastMath = false;
+    private boolean stream = false;
+    private boolean offHeap = false;
+    private long columnCacheBytes = ColumnCache.DEFAULT_BUDGET;
+    private int streamBlockSize = StreamingFitness.DEFAULT_BLOCK_SIZE;
+    private int readAhead = StreamingFitness.DEFAULT_READ_AHEAD;
+    private int islands = 1;
+    private int migrationInterval = 10;
+    private int migrants = 5;
+    /**
+     * Makes a new config with the defaults, and then the system properties
+     * that are set.
+     * @throws IllegalArgumentException if a system property is not a valid
+     * value for its setting
+     */
+    public GeneticConfig()
+    {
+        for (int i = 0; i < NAMES.length; i++)
+        {
+            String value = System.getProperty(PROPERTY_PREFIX + NAMES[i]);
+            if(value != null)
+            {
+                set(NAMES[i], value);
+            }
+        }
+    }
+    /**
+     * Makes a copy of a config.
+     * @param other The config to copy
+     */
+    public GeneticConfig(GeneticConfig other)
+    {
+        populationSize = other.populationSize;
+        offspringRatio = other.offspringRatio;
+        selectivity = other.selectivity;
+        mutationRate = other.mutationRate;
+        threads = other.threads;
+        iterationsToExit = other.iterationsToExit;
+        maxGenerations = other.maxGenerations;
+        targetFitness = other.targetFitness;
+        seed = other.seed;
+        fastMath = other.fastMath;
+        stream = other.stream;
+        offHeap = other.offHeap;
+        columnCacheBytes = other.columnCacheBytes;
+        streamBlockSize = other.streamBlockSize;
+        readAhead = other.readAhead;
+        islands = other.islands;
+        migrationInterval = other.migrationInterval;
+        migrants = other.migrants;
+    }
+    /**
+     * Sets one setting by name, from text.
+     * @param name The name of the setting
+     * @param value The value, as it would be written in a properties file
+     * @throws IllegalArgumentException if there is no setting with that name,
+     * or the value is not valid for it.  A number that does not parse throws
+     * a NumberFormatException, which is one, and a boolean must be true or
+     * false.
+     */
+    public void set(String name, String value)
+    {
+        value = value.trim();
+        if(name.equals("populationSize"))
+        {
+            setPopulationSize(Integer.parseInt(value));
+        }
+        else if(name.equals("offspringRatio"))
+        {
+            setOffspringRatio(Double.parseDouble(value));
+        }
+        else if(name.equals("selectivity"))
+        {
+            setSelectivity(Double.parseDouble(value));
+        }
+        else if(name.equals("mutationRate"))
+        {
+            setMutationRate(Double.parseDouble(value));
+        }
+        else if(name.equals("threads"))
+        {
+            setThreads(Integer.parseInt(value));
+        }
+        else if(name.equals("iterationsToExit"))
+        {
+            setIterationsToExit(Integer.parseInt(value));
+        }
+        else if(name.equals("maxGenerations"))
+        {
+            setMaxGenerations(Integer.parseInt(value));
+        }
+        else if(name.equals("targetFitness"))
+        {
+            setTargetFitness(Double.parseDouble(value));
+        }
+        else if(name.equals("seed"))
+        {
+            setSeed(value.length() == 0 ? null : Long.valueOf(value));
+        }
+        else if(name.equals("fastMath"))
+        {
+            setFastMath(parseBoolean(name, value));
+        }
+        else if(name.equals("stream"))
+        {
+            setStream(parseBoolean(name, value));
+        }
+        else if(name.equals("offHeap"))
+        {
+            setOffHeap(parseBoolean(name, value));
+        }
+        else if(name.equals("columnCacheBytes"))
+        {
+            setColumnCacheBytes(Long.parseLong(value));
+        }
+        else if(name.equals("streamBlockSize"))
+        {
+            setStreamBlockSize(Integer.parseInt(value));
+        }
+        else if(name.equals("readAhead"))
+        {
+            setReadAhead(Integer.parseInt(value));
+        }
+        else if(name.equals("islands"))
+        {
+            setIslands(Integer.parseInt(value));
+        }
+        else if(name.equals("migrationInterval"))
+        {
+            setMigrationInterval(Integer.parseInt(value));
+        }
+        else if(name.equals("migrants"))
+        {
+            setMigrants(Integer.parseInt(value));
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown setting: "+name);
+        }
+    }
+    /**
+     * Parses a boolean setting, which must be true or false, in any case, so
+     * a typo is not quietly taken as false.
+     */
+    private static boolean parseBoolean(String name, String value)
+    {
+        check(value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false"), name, value);
+        return value.equalsIgnoreCase("true");
+    }
+    /**
+     * Sets every setting in a properties file.  Settings that are not in the
+     * file are not changed.
+     * @param f The properties file
+     * @throws IOException if the file could not be read
+     * @throws IllegalArgumentException if the file has a key that is not a
+     * setting, or a value that is not valid
+     */
+    public void load(File f) throws IOException
+    {
+        Properties properties = new Properties();
+        FileInputStream in = new FileInputStream(f);
+        try
+        {
+            properties.load(in);
+        }
+        finally
+        {
+            in.close();
+        }
+        Enumeration<?> names = properties.propertyNames();
+        while(names.hasMoreElements())
+        {
+            String name = (String)names.nextElement();
+            set(name, properties.getProperty(name));
+        }
+    }
+    /**
+     * Sets the settings given on the command line.  Each argument is
+     * <tt>--name=value</tt>, and <tt>--config=file</tt> loads a properties
+     * file.  They are done in order, so a flag after a file overrides it.
+     * @param args The command line arguments
+     * @throws IOException if a properties file could not be read
+     * @throws IllegalArgumentException if an argument is not a flag, or is
+     * not a setting, or has a value that is not valid
+     */
+    public void parseArguments(String args[]) throws IOException
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            int equals = args[i].indexOf('=');
+            if(!args[i].startsWith("--") || equals < 0)
+            {
+                throw new IllegalArgumentException("Expected --name=value, found "+args[i]);
+            }
+            String name = args[i].substring(2, equals), value = args[i].substring(equals + 1);
+            if(name.equals(CONFIG_FLAG))
+            {
+                load(new File(value));
+            }
+            else
+            {
+                set(name, value);
+            }
+        }
+    }
+    /**
+     * Gets the number of children made each generation, which is the
+     * population size times the offspring ratio, and at least 1.
+     * @return The number of children
+     */
+    public int getChildCount()
+    {
+        return Math.max(1, (int)(populationSize * offspringRatio));
+    }
+    /**
+     * Checks that a population with this many genes in each genome fits in
+     * the gene matrix of a <tt>Population</tt>, which is one array with a row
+     * for the population size plus the children.  The population size and
+     * offspring ratio are only checked together here, so they can be set in
+     * any order.
+     * @param geneCount The number of genes in each genome
+     * @throws IllegalArgumentException if the gene matrix would be too big
+     */
+    public void checkCapacity(int geneCount)
+    {
+        long capacity = (long)populationSize + getChildCount();
+        if(capacity * Math.max(1, geneCount) > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Population too big: "+capacity+" members with "+geneCount+
+                    " genes each is more than "+Integer.MAX_VALUE+" genes");
+        }
+    }
+    /**
+     * Gets the number of members kept after each generation.
+     * @return The population size
+     */
+    public int getPopulationSize()
+    {
+        return populationSize;
+    }
+    /**
+     * Sets the number of members kept after each generation.
+     * @param populationSize The population size, at least 2
+     * @throws IllegalArgumentException if it is less than 2
+     */
+    public void setPopulationSize(int populationSize)
+    {
+        check(populationSize >= 2, "populationSize", populationSize);
+        this.populationSize = populationSize;
+    }
+    /**
+     * Gets the number of children made each generation, as a fraction of the
+     * population size.
+     * @return The offspring ratio
+     */
+    public double getOffspringRatio()
+    {
+        return offspringRatio;
+    }
+    /**
+     * Sets the number of children made each generation, as a fraction of the
+     * population size.
+     * @param offspringRatio The offspring ratio, which must be positive
+     * @throws IllegalArgumentException if it is not positive
+     */
+    public void setOffspringRatio(double offspringRatio)
+    {
+        check(offspringRatio > 0 && offspringRatio < Integer.MAX_VALUE, "offspringRatio", offspringRatio);
+        this.offspringRatio = offspringRatio;
+    }
+    /**
+     * Gets the fraction of the population that parents are mostly chosen
+     * from.
+     * @return The selectivity
+     */
+    public double getSelectivity()
+    {
+        return selectivity;
+    }
+    /**
+     * Sets the fraction of the population that parents are mostly chosen
+     * from.  The index of each parent is the absolute value of a normal
+     * random number with this fraction of the population as its standard
+     * deviation, so a smaller selectivity is more selective.
+     * @param selectivity The selectivity, which must be positive
+     * @throws IllegalArgumentException if it is not positive
+     */
+    public void setSelectivity(double selectivity)
+    {
+        check(selectivity > 0 && selectivity < Double.POSITIVE_INFINITY, "selectivity", selectivity);
+        this.selectivity = selectivity;
+    }
+    /**
+     * Gets the number of mutations for each child.
+     * @return The mutation rate
+     */
+    public double getMutationRate()
+    {
+        return mutationRate;
+    }
+    /**
+     * Sets the number of mutations for each child.  It does not have to be a
+     * whole number.
+     * @param mutationRate The mutation rate, which must not be negative
+     * @throws IllegalArgumentException if it is negative
+     */
+    public void setMutationRate(double mutationRate)
+    {
+        check(mutationRate >= 0 && mutationRate < Double.POSITIVE_INFINITY, "mutationRate", mutationRate);
+        this.mutationRate = mutationRate;
+    }
+    /**
+     * Gets the number of threads that make and score children.
+     * @return The number of threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+    /**
+     * Sets the number of threads that make and score children, and parse
+     * text data.
+     * @param threads The number of threads, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setThreads(int threads)
+    {
+        check(threads >= 1, "threads", threads);
+        this.threads = threads;
+    }
+    /**
+     * Gets the number of generations the best fitness can stay the same
+     * before the run stops.
+     * @return The number of generations
+     */
+    public int getIterationsToExit()
+    {
+        return iterationsToExit;
+    }
+    /**
+     * Sets the number of generations the best fitness can stay the same
+     * before the run stops.  The run stops once it has stayed the same for
+     * more than this many.
+     * @param iterationsToExit The number of generations, which must not be
+     * negative
+     * @throws IllegalArgumentException if it is negative
+     */
+    public void setIterationsToExit(int iterationsToExit)
+    {
+        check(iterationsToExit >= 0, "iterationsToExit", iterationsToExit);
+        this.iterationsToExit = iterationsToExit;
+    }
+    /**
+     * Gets the most generations a run can have.
+     * @return The most generations, or 0 for no limit
+     */
+    public int getMaxGenerations()
+    {
+        return maxGenerations;
+    }
+    /**
+     * Sets the most generations a run can have.
+     * @param maxGenerations The most generations, or 0 for no limit
+     * @throws IllegalArgumentException if it is negative
+     */
+    public void setMaxGenerations(int maxGenerations)
+    {
+        check(maxGenerations >= 0, "maxGenerations", maxGenerations);
+        this.maxGenerations = maxGenerations;
+    }
+    /**
+     * Gets the fitness that is good enough to stop the run.
+     * @return The target fitness
+     */
+    public double getTargetFitness()
+    {
+        return targetFitness;
+    }
+    /**
+     * Sets the fitness that is good enough to stop the run.  The run stops
+     * once the best fitness is at or below it, so negative infinity never
+     * stops the run.
+     * @param targetFitness The target fitness
+     * @throws IllegalArgumentException if it is not a number
+     */
+    public void setTargetFitness(double targetFitness)
+    {
+        check(targetFitness == targetFitness, "targetFitness", targetFitness);
+        this.targetFitness = targetFitness;
+    }
+    /**
+     * Gets the seed of the random numbers.
+     * @return The seed, or null if the time is used
+     */
+    public Long getSeed()
+    {
+        return seed;
+    }
+    /**
+     * Sets the seed of the random numbers.  The same seed always gives the
+     * same result, no matter how many threads there are.
+     * @param seed The seed, or null to use the time when the run starts
+     */
+    public void setSeed(Long seed)
+    {
+        this.seed = seed;
+    }
+    /**
+     * Gets if fitness is calculated with the approximations in FastMath.
+     * @return If fast math is used
+     */
+    public boolean isFastMath()
+    {
+        return fastMath;
+    }
+    /**
+     * Sets if fitness is calculated with the approximations in FastMath while
+     * the algorithm runs.  The best members are always scored exactly before
+     * the result is shown.
+     * @param fastMath If fast math is used
+     */
+    public void setFastMath(boolean fastMath)
+    {
+        this.fastMath = fastMath;
+    }
+    /**
+     * Gets if the data is streamed through blocks.
+     * @return If the data is streamed
+     */
+    public boolean isStream()
+    {
+        return stream;
+    }
+    /**
+     * Sets if the data is streamed through a few blocks in memory by
+     * StreamingFitness, for data that is too big to fit in memory.
+     * @param stream If the data is streamed
+     */
+    public void setStream(boolean stream)
+    {
+        this.stream = stream;
+    }
+    /**
+     * Gets if text data is moved outside of the heap once it is parsed.
+     * @return If text data is moved outside of the heap
+     */
+    public boolean isOffHeap()
+    {
+        return offHeap;
+    }
+    /**
+     * Sets if text data is moved outside of the heap once it is parsed by
+     * DataFile.load.
+     * @param offHeap If text data is moved outside of the heap
+     */
+    public void setOffHeap(boolean offHeap)
+    {
+        this.offHeap = offHeap;
+    }
+    /**
+     * Gets the most memory ColumnCache can use.
+     * @return The budget, in bytes
+     */
+    public long getColumnCacheBytes()
+    {
+        return columnCacheBytes;
+    }
+    /**
+     * Sets the most memory ColumnCache can use for the parts of the equation
+     * that only depend on the data.
+     * @param columnCacheBytes The budget, in bytes, or 0 for no columns
+     * @throws IllegalArgumentException if it is negative
+     */
+    public void setColumnCacheBytes(long columnCacheBytes)
+    {
+        check(columnCacheBytes >= 0, "columnCacheBytes", columnCacheBytes);
+        this.columnCacheBytes = columnCacheBytes;
+    }
+    /**
+     * Gets the number of points in each block when streaming.
+     * @return The block size
+     */
+    public int getStreamBlockSize()
+    {
+        return streamBlockSize;
+    }
+    /**
+     * Sets the number of points in each block when streaming.
+     * @param streamBlockSize The block size, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setStreamBlockSize(int streamBlockSize)
+    {
+        check(streamBlockSize >= 1, "streamBlockSize", streamBlockSize);
+        this.streamBlockSize = streamBlockSize;
+    }
+    /**
+     * Gets the number of blocks the reader can get ahead when streaming.
+     * @return The read ahead
+     */
+    public int getReadAhead()
+    {
+        return readAhead;
+    }
+    /**
+     * Sets the number of blocks the reader can get ahead when streaming.
+     * @param readAhead The read ahead, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setReadAhead(int readAhead)
+    {
+        check(readAhead >= 1, "readAhead", readAhead);
+        this.readAhead = readAhead;
+    }
+    /**
+     * Gets the number of populations run at once by IslandModel.
+     * @return The number of islands
+     */
+    public int getIslands()
+    {
+        return islands;
+    }
+    /**
+     * Sets the number of populations run at once by IslandModel.  Each island
+     * has its own thread, and the threads setting is split between them.
+     * @param islands The number of islands, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setIslands(int islands)
+    {
+        check(islands >= 1, "islands", islands);
+        this.islands = islands;
+    }
+    /**
+     * Gets the number of generations between migrations.
+     * @return The migration interval
+     */
+    public int getMigrationInterval()
+    {
+        return migrationInterval;
+    }
+    /**
+     * Sets the number of generations between migrations from one island to
+     * the next.
+     * @param migrationInterval The migration interval, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setMigrationInterval(int migrationInterval)
+    {
+        check(migrationInterval >= 1, "migrationInterval", migrationInterval);
+        this.migrationInterval = migrationInterval;
+    }
+    /**
+     * Gets the number of best members each island sends at a migration.
+     * @return The number of migrants
+     */
+    public int getMigrants()
+    {
+        return migrants;
+    }
+    /**
+     * Sets the number of best members each island sends to the next one at a
+     * migration.  An island takes in at most as many as the children it
+     * makes each generation, and drops the rest.
+     * @param migrants The number of migrants, at least 1
+     * @throws IllegalArgumentException if it is less than 1
+     */
+    public void setMigrants(int migrants)
+    {
+        check(migrants >= 1, "migrants", migrants);
+        this.migrants = migrants;
+    }
+    /**
+     * Throws an exception for a bad value.
+     */
+    private static void check(boolean valid, String name, Object value)
+    {
+        if(!valid)
+        {
+            throw new IllegalArgumentException("Bad "+name+": "+value);
+        }
+    }
+    /**
+     * Gets every setting, as it would be written in a properties file, on one
+     * line.
+     * @return The settings
+     */
+    public String toString()
+    {
+        return "populationSize="+populationSize+", offspringRatio="+offspringRatio+", selectivity="+selectivity+
+                ", mutationRate="+mutationRate+", threads="+threads+", iterationsToExit="+iterationsToExit+
+                ", maxGenerations="+maxGenerations+", targetFitness="+targetFitness+
+                ", seed="+(seed == null ? "" : seed.toString())+", fastMath="+fastMath+", stream="+stream+
+                ", offHeap="+offHeap+", columnCacheBytes="+columnCacheBytes+", streamBlockSize="+streamBlockSize+
+                ", readAhead="+readAhead+", islands="+islands+", migrationInterval="+migrationInterval+
+                ", migrants="+migrants;
+    }
+}
@@ -0,0 +1,192 @@
+package tobin.genetic;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import tobin.equation.Node;
+import tobin.gui.ProgressFrame;
+
+/**
+ * Runs the genetic algorithm as a number of separate populations, the
+ * islands, each a <tt>Genetic</tt> on its own thread, with its own random
+ * numbers and its own variability.  Every few generations each island sends
+ * copies of its best members to the next island in a ring, so good genomes
+ * spread, but each island still searches its own way, which keeps one early
+ * solution from taking over every population and stalling the run.<br>
+ * The migrants are passed through a ConcurrentLinkedQueue for each island,
+ * which never locks, and an island only looks at its queue when it migrates,
+ * so the islands never wait for each other.  Because of that the islands do
+ * not stay in step, and a run with a seed is not exactly the same every
+ * time.<br>
+ * Each island stops on its own stopping rules, and the run is over when all
+ * of them have stopped.  The result is the best member of any island.  The
+ * number of islands, how often they migrate, and how many members they send
+ * are set by <tt>GeneticConfig</tt>, and the threads of the config are split
+ * between the islands.<br>
+ * The data is not released when the run ends, since the best candidate can
+ * still be scored on it.  Whoever made the data releases it once they are
+ * done with the result.
+ * @author Tobin
+ * @version 1
+ */
+public class IslandModel implements Runnable
+{
+    private final Genetic islands[];
+    private final ProgressFrame progress;
+    private Candidate best;
+    /**
+     * Makes a new island model, with all of the islands initialized, and a
+     * progress frame that shows the result.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation
+     * @param guess The guess to generate the initial populations from
+     * @param title The title of the progress frame.
+     * @param text The initial text of the progress frame.
+     * @param config The settings of the algorithm
+     * @throws IllegalArgumentException if the equation uses more inputs than
+     * the data has
+     */
+    public IslandModel(Data d, Node equation, VariableMap v, Guess guess, String title, String text, GeneticConfig config)
+    {
+        this(d, equation, v, guess, config, new ProgressFrame(title, text));
+    }
+    /**
+     * Makes a new island model that does not show a progress frame.  The
+     * result can be gotten with getBest once it has run.
+     * @param d The data to match the equation to
+     * @param equation The equation to match to the data
+     * @param v The variable map containing the variables in the equation
+     * @param guess The guess to generate the initial populations from
+     * @param config The settings of the algorithm
+     * @throws IllegalArgumentException if the equation uses more inputs than
+     * the data has
+     */
+    public IslandModel(Data d, Node equation, VariableMap v, Guess guess, GeneticConfig config)
+    {
+        this(d, equation, v, guess, config, null);
+    }
+    /**
+     * Makes a new island model.  Each island gets a copy of the config with
+     * its share of the threads, and, if there is a seed, the seed plus the
+     * index of the island.
+     */
+    private IslandModel(Data d, Node equation, VariableMap v, Guess guess, GeneticConfig config, ProgressFrame progress)
+    {
+        this.progress = progress;
+        int count = config.getIslands();
+        Island rings[] = new Island[count];
+        for (int i = 0; i < count; i++)
+        {
+            rings[i] = new Island();
+        }
+        for (int i = 0; i < count && count > 1; i++)
+        {
+            rings[i].next = rings[(i + 1) % count];
+        }
+
+        System.out.println("Islands: "+count);
+        islands = new Genetic[count];
+        for (int i = 0; i < count; i++)
+        {
+            GeneticConfig island = new GeneticConfig(config);
+            island.setThreads(Math.max(1, config.getThreads() / count));
+            if(config.getSeed() != null)
+            {
+                island.setSeed(Long.valueOf(config.getSeed().longValue() + i));
+            }
+            islands[i] = new Genetic(d, equation, v, guess, island, rings[i]);
+        }
+
+        if(progress != null)
+        {
+            progress.setVisible(true);
+        }
+    }
+    /**
+     * Runs every island on its own thread, and waits for all of them to stop.
+     * Then the best member of any island is shown.
+     */
+    public void run()
+    {
+        Thread threads[] = new Thread[islands.length];
+        for (int i = 0; i < islands.length; i++)
+        {
+            threads[i] = new Thread(islands[i], "Genetic Island " + i);
+            threads[i].start();
+        }
+        try
+        {
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i].join();
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            System.out.println("Interrupted while waiting for the islands");
+            return;
+        }
+
+        for (int i = 0; i < islands.length; i++)
+        {
+            Candidate c = islands[i].getCandidate(0);
+            if(best == null || Population.isBetter(c.getFitness(), best.getFitness()))
+            {
+                best = c;
+            }
+        }
+        if(progress != null)
+        {
+            progress.setText("Fitness: " + best.getFitness() + "\tDone\n" + best.getFriendlyString());
+        }
+        System.out.println("Best of the islands: "+best);
+    }
+    /**
+     * Gets the best member of any island, once the model has run.
+     * @return The best candidate, or null if the model has not run
+     */
+    public Candidate getBest()
+    {
+        return best;
+    }
+
+    /**
+     * The queue of migrants coming in to one island, and the island it sends
+     * its own migrants to.
+     */
+    static class Island
+    {
+        private final ConcurrentLinkedQueue<Candidate> inbox = new ConcurrentLinkedQueue<Candidate>();
+        private Island next;
+        private volatile boolean finished = false;
+        /**
+         * Sends a migrant to the next island.  Nothing is sent if there is no
+         * other island, or it has stopped, so the queue of an island that is
+         * done does not keep growing.
+         * @param migrant The migrant, which must be a copy
+         */
+        void send(Candidate migrant)
+        {
+            if(next != null && !next.finished)
+            {
+                next.inbox.offer(migrant);
+            }
+        }
+        /**
+         * Takes the next migrant that was sent to this island.
+         * @return The migrant, or null if there are none
+         */
+        Candidate receive()
+        {
+            return inbox.poll();
+        }
+        /**
+         * Marks this island as stopped, and drops anything in its queue.
+         */
+        void finish()
+        {
+            finished = true;
+            inbox.clear();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package tobin.genetic;
+
+import java.nio.DoubleBuffer;
+import tobin.equation.BufferKernel;
+import tobin.equation.EquationKernel;
+import tobin.equation.EquationProgram;
+import tobin.equation.KernelGenerator;
+
+/**
+ * Calculates fitness with a kernel generated for the equation at the start of
+ * the run.  The kernel loops straight over the columns of the data.<br>
+ * If the data is kept outside of the heap the kernel reads the buffers
+ * instead, one segment at a time, and the columns of the program are wrapped
+ * in buffers split the same way.  The chunks ChunkedFitness scores never
+ * cross a segment, so chunked fitness is exactly the same either way.  The
+ * segments are kept, so before they are read the data is checked, and once
+ * it has been released the fitness can not be calculated any more.
+ * @author Tobin
+ * @version 1
+ */
+public class KernelFitness implements FitnessFunction
+{
+    private final EquationProgram program;
+    private final Data data;
+    private final EquationKernel kernel;
+    private final BufferKernel bufferKernel;
+    private final double columns[][];
+    private final double inputs[][], ys[];
+    private final DoubleBuffer columnSegments[][], inputSegments[][], ySegments[];
+    private final int size;
+    private final double initialRegisters[];
+    /**
+     * The registers of each thread, which are reused for every genome the
+     * thread scores, so scoring allocates nothing.  The kernels only read
+     * them.
+     */
+    private final ThreadLocal<double[]> registers = new ThreadLocal<double[]>()
+    {
+        protected double[] initialValue()
+        {
+            return initialRegisters.clone();
+        }
+    };
+    /**
+     * Generates a kernel for the given program.
+     * @param program The compiled equation to fit to the data
+     * @param data The data used to evaluate each genome
+     * @param map The variable map containing the constants used by the
+     * equation
+     * @throws IllegalStateException if the kernel could not be generated
+     */
+    public KernelFitness(EquationProgram program, Data data, VariableMap map)
+    {
+        this.program = program;
+        this.data = data;
+        columns = program.getColumns();
+        size = data.size();
+
+        if(data.isBuffered())
+        {
+            kernel = null;
+            bufferKernel = KernelGenerator.generateBuffered(program, false);
+            inputs = null;
+            ys = null;
+            ySegments = data.getYSegments();
+            inputSegments = new DoubleBuffer[ySegments.length][data.getInputCount()];
+            columnSegments = new DoubleBuffer[ySegments.length][columns.length];
+            for (int column = 0; column < data.getInputCount(); column++)
+            {
+                DoubleBuffer segments[] = data.getInputSegments(column);
+                for (int i = 0; i < segments.length; i++)
+                {
+                    inputSegments[i][column] = segments[i];
+                }
+            }
+            for (int i = 0; i < ySegments.length; i++)
+            {
+                for (int column = 0; column < columns.length; column++)
+                {
+                    columnSegments[i][column] = DoubleBuffer.wrap(columns[column],
+                            i * DataFile.SEGMENT_SIZE, ySegments[i].capacity()).slice();
+                }
+            }
+        }
+        else
+        {
+            kernel = KernelGenerator.generate(program);
+            bufferKernel = null;
+            inputs = data.getInputs();
+            ys = data.getY();
+            columnSegments = null;
+            inputSegments = null;
+            ySegments = null;
+        }
+
+        initialRegisters = map.newRegisters();
+    }
+    /**
+     * Makes a fitness function that uses the same program and data as the
+     * given one, but with a kernel that uses the approximations in FastMath.
+     * @param exact The fitness function to copy
+     * @throws IllegalStateException if the kernel could not be generated
+     */
+    private KernelFitness(KernelFitness exact)
+    {
+        program = exact.program;
+        data = exact.data;
+        kernel = exact.kernel == null ? null : KernelGenerator.generate(program, true);
+        bufferKernel = exact.bufferKernel == null ? null : KernelGenerator.generateBuffered(program, true);
+        columns = exact.columns;
+        inputs = exact.inputs;
+        ys = exact.ys;
+        columnSegments = exact.columnSegments;
+        inputSegments = exact.inputSegments;
+        ySegments = exact.ySegments;
+        size = exact.size;
+        initialRegisters = exact.initialRegisters;
+    }
+    /**
+     * Gets a fitness function for the same equation and data that uses fast
+     * math.  The fitness it calculates is close to this one, within the error
+     * bounds described in FastMath, but not exactly the same.
+     * @return The fast fitness function
+     * @throws IllegalStateException if the kernel could not be generated
+     */
+    public KernelFitness withFastMath()
+    {
+        return new KernelFitness(this);
+    }
+
+    public double calculateFitness(double genes[], int offset)
+    {
+        return calculateFitness(genes, offset, 0, size);
+    }
+
+    public double calculateFitness(double genes[], int offset, int start, int end)
+    {
+        double registers[] = this.registers.get();
+        System.arraycopy(genes, offset, registers, VariableMap.FIRST_PARAMETER_SLOT,
+                registers.length - VariableMap.FIRST_PARAMETER_SLOT);
+
+        if(kernel != null)
+        {
+            return kernel.sumSquaredError(registers, columns, inputs, ys, start, end);
+        }
+
+        if(data.isReleased())
+        {
+            throw new IllegalStateException("The data has been released");
+        }
+        double error = 0;
+        for (int i = start / DataFile.SEGMENT_SIZE; start < end; i++)
+        {
+            int base = i * DataFile.SEGMENT_SIZE;
+            int segmentEnd = Math.min(end, base + ySegments[i].capacity());
+            error += bufferKernel.sumSquaredError(registers, columnSegments[i], inputSegments[i], ySegments[i],
+                    start - base, segmentEnd - base);
+            start = segmentEnd;
+        }
+        return error;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,307 @@
+package tobin.genetic;
+
+/**
+ * The population of the genetic algorithm, stored as one matrix of genes and
+ * an array of fitnesses instead of an object for each candidate.  Row i of
+ * the matrix is the genome of member i, starting at index i * geneCount, with
+ * the value of each variable in the order of <tt>VariableMap.getVariables</tt>.
+ * The names of the variables are only stored once, in the keys.<br>
+ * Everything is allocated when the population is made, with room for the
+ * largest size it will ever have, so sorting it and making children in it
+ * allocates nothing, and a population of millions only takes 8 bytes for each
+ * gene, and 8 for each fitness, plus the spare matrix and the arrays
+ * sorting uses.<br>
+ * The members are sorted by fitness, lowest first, and a fitness that is not
+ * a number is sorted after every other one.  Once the population is sorted,
+ * each generation only has to sort its children and merge them in, with
+ * mergeChildren, which takes time linear in the size of the population,
+ * plus the time to sort the children.
+ * @author Tobin
+ * @version 1
+ */
+public class Population
+{
+    /**
+     * The length of the runs that are insertion sorted before merging.
+     */
+    private static final int RUN_SIZE = 16;
+
+    private final String keys[];
+    private final int geneCount, capacity;
+    private double genes[], fitness[];
+    private double spareGenes[], spareFitness[];
+    private final int orderA[], orderB[];
+    private final double keysA[], keysB[];
+    private int sortedOrder[];
+    private double sortedKeys[];
+    private int size = 0;
+    /**
+     * Makes a new empty population.
+     * @param keys The names of the variables, which is the same for every
+     * member
+     * @param capacity The most members the population can have
+     */
+    public Population(String keys[], int capacity)
+    {
+        this.keys = keys.clone();
+        this.capacity = capacity;
+        geneCount = keys.length;
+        genes = new double[capacity * geneCount];
+        fitness = new double[capacity];
+        spareGenes = new double[capacity * geneCount];
+        spareFitness = new double[capacity];
+        orderA = new int[capacity];
+        orderB = new int[capacity];
+        keysA = new double[capacity];
+        keysB = new double[capacity];
+    }
+    /**
+     * Gets the number of members in the population.
+     * @return The size
+     */
+    public int size()
+    {
+        return size;
+    }
+    /**
+     * Sets the number of members.  If it is smaller the last members are
+     * dropped, and if it is bigger the new members are whatever was in their
+     * rows, so they should be filled in.
+     * @param size The new size
+     * @throws IllegalArgumentException if the size is negative or more than
+     * the capacity
+     */
+    public void setSize(int size)
+    {
+        if(size < 0 || size > capacity)
+        {
+            throw new IllegalArgumentException("Bad population size "+size+", capacity "+capacity);
+        }
+        this.size = size;
+    }
+    /**
+     * Gets the most members the population can have.
+     * @return The capacity
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    /**
+     * Gets the number of genes in each genome.
+     * @return The number of genes
+     */
+    public int getGeneCount()
+    {
+        return geneCount;
+    }
+    /**
+     * Gets the names of the genes.
+     * @return A copy of the names
+     */
+    public String[] getKeys()
+    {
+        return keys.clone();
+    }
+    /**
+     * Gets the gene matrix.  This is not a copy, so changing it changes the
+     * population, which is how children are made in place.  It is a
+     * different array after mergeChildren.
+     * @return The gene matrix
+     */
+    public double[] getGenes()
+    {
+        return genes;
+    }
+    /**
+     * Gets the fitness of every member.  This is not a copy, so the fitness
+     * functions can write straight into it.  It is a different array after
+     * mergeChildren.
+     * @return The fitness array
+     */
+    public double[] getFitnesses()
+    {
+        return fitness;
+    }
+    /**
+     * Gets one gene of a member.
+     * @param member The index of the member
+     * @param gene The index of the gene
+     * @return The value of the gene
+     */
+    public double getGene(int member, int gene)
+    {
+        return genes[member * geneCount + gene];
+    }
+    /**
+     * Gets a copy of the genome of a member.
+     * @param member The index of the member
+     * @return The genes of the member
+     */
+    public double[] getGenome(int member)
+    {
+        double out[] = new double[geneCount];
+        System.arraycopy(genes, member * geneCount, out, 0, geneCount);
+        return out;
+    }
+    /**
+     * Gets the fitness of a member.
+     * @param member The index of the member
+     * @return The fitness
+     */
+    public double getFitness(int member)
+    {
+        return fitness[member];
+    }
+    /**
+     * Sets the fitness of a member.
+     * @param member The index of the member
+     * @param value The fitness
+     */
+    public void setFitness(int member, double value)
+    {
+        fitness[member] = value;
+    }
+    /**
+     * Sorts all of the members by fitness.
+     */
+    public void sort()
+    {
+        sort(0, size);
+    }
+    /**
+     * Sorts some of the members by fitness.  The sort is stable, so members
+     * with the same fitness stay in the same order.  The rows are moved into
+     * the spare matrix in their new order, and copied back.
+     * @param from The first member to sort
+     * @param to The index after the last member to sort
+     */
+    public void sort(int from, int to)
+    {
+        int length = to - from;
+        sortOrder(from, to);
+        for (int i = 0; i < length; i++)
+        {
+            int member = sortedOrder[i];
+            System.arraycopy(genes, member * geneCount, spareGenes, (from + i) * geneCount, geneCount);
+            spareFitness[from + i] = fitness[member];
+        }
+        System.arraycopy(spareGenes, from * geneCount, genes, from * geneCount, length * geneCount);
+        System.arraycopy(spareFitness, from, fitness, from, length);
+    }
+    /**
+     * Sorts the children that were added after the sorted members, and then
+     * merges them in, so the whole population is sorted.  This gives the same
+     * order as sorting everything, because a child only goes before a member
+     * with a strictly worse fitness, but it only sorts the children.  Each row
+     * is copied once, into the spare matrix, with the members between two
+     * children copied all at once, and then the spare matrix becomes the gene
+     * matrix, so the gene matrix and the fitness array must be gotten again
+     * after this.
+     * @param first The index of the first child.  The members before it must
+     * already be sorted.
+     */
+    public void mergeChildren(int first)
+    {
+        int children = size - first;
+        sortOrder(first, size);
+        int i = 0, j = 0, k = 0;
+        while(k < size)
+        {
+            int start = i;
+            while(i < first && (j >= children || !isBetter(sortedKeys[j], fitness[i])))
+            {
+                i++;
+            }
+            System.arraycopy(genes, start * geneCount, spareGenes, k * geneCount, (i - start) * geneCount);
+            System.arraycopy(fitness, start, spareFitness, k, i - start);
+            k += i - start;
+
+            if(j < children)
+            {
+                System.arraycopy(genes, sortedOrder[j] * geneCount, spareGenes, k * geneCount, geneCount);
+                spareFitness[k++] = sortedKeys[j++];
+            }
+        }
+
+        double swap[] = genes;
+        genes = spareGenes;
+        spareGenes = swap;
+        swap = fitness;
+        fitness = spareFitness;
+        spareFitness = swap;
+    }
+    /**
+     * Sorts the indexes of some of the members by fitness, without moving
+     * the rows.  The fitnesses are sorted along with the indexes, so the
+     * sort only reads them in order.  Runs of RUN_SIZE are insertion sorted,
+     * and then merged, which is stable.  Afterwards sortedOrder holds the
+     * indexes, and sortedKeys the fitnesses, starting at index 0.
+     * @param from The first member to sort
+     * @param to The index after the last member to sort
+     */
+    private void sortOrder(int from, int to)
+    {
+        int length = to - from;
+        int order[] = orderA, orderBuffer[] = orderB;
+        double keys[] = keysA, keyBuffer[] = keysB;
+        for (int run = 0; run < length; run += RUN_SIZE)
+        {
+            int end = Math.min(run + RUN_SIZE, length);
+            for (int i = run; i < end; i++)
+            {
+                double key = fitness[from + i];
+                int j = i;
+                while(j > run && isBetter(key, keys[j - 1]))
+                {
+                    keys[j] = keys[j - 1];
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                keys[j] = key;
+                order[j] = from + i;
+            }
+        }
+
+        for (int width = RUN_SIZE; width < length; width *= 2)
+        {
+            for (int left = 0; left < length; left += 2 * width)
+            {
+                int middle = Math.min(left + width, length), right = Math.min(left + 2 * width, length);
+                int i = left, j = middle;
+                for (int k = left; k < right; k++)
+                {
+                    if(i < middle && (j >= right || !isBetter(keys[j], keys[i])))
+                    {
+                        keyBuffer[k] = keys[i];
+                        orderBuffer[k] = order[i++];
+                    }
+                    else
+                    {
+                        keyBuffer[k] = keys[j];
+                        orderBuffer[k] = order[j++];
+                    }
+                }
+            }
+            int swapOrder[] = order;
+            order = orderBuffer;
+            orderBuffer = swapOrder;
+            double swapKeys[] = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+        }
+        sortedOrder = order;
+        sortedKeys = keys;
+    }
+    /**
+     * Returns if fitness a is strictly better than b.  Lower is better, and
+     * any number is better than NaN.
+     * @param a The first fitness
+     * @param b The second fitness
+     * @return If a is better
+     */
+    public static boolean isBetter(double a, double b)
+    {
+        return a < b || (b != b && a == a);
+    }
+}
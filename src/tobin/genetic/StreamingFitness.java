@@ -0,0 +1,444 @@
+package tobin.genetic;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import tobin.equation.BlockOperations;
+import tobin.equation.EquationKernel;
+import tobin.equation.EquationProgram;
+import tobin.equation.EvaluationContext;
+import tobin.equation.KernelGenerator;
+import tobin.equation.Node;
+
+/**
+ * Calculates fitness by streaming the data through a few blocks in the heap,
+ * so the data can be bigger than the memory of the computer.  Instead of
+ * going over all of the data for each genome, every genome is scored on one
+ * block before the next block is used, so each block is read once for a
+ * whole generation.<br>
+ * A reader thread copies the blocks out of the data, which for a .gdat file
+ * reads them from the disk through the mapping, while the blocks before them
+ * are scored.  It can get up to the read ahead number of blocks ahead.  The
+ * reader is started on the first pass and lives until close is called, and
+ * is handed each block to fill through the free queue, with the range it
+ * should read.  The blocks and the registers of each thread are reused, so a
+ * pass allocates nothing for each point, only the error totals, and a few
+ * small arrays for each chunk if the tree is evaluated or the chunks are
+ * scored on the workers.  The block size and read ahead are set by the
+ * streamBlockSize and readAhead settings of <tt>GeneticConfig</tt>.<br>
+ * Each block is scored in the same chunks as ChunkedFitness, added in the
+ * same order, so the fitness is the same as ChunkedFitness would give for
+ * the same equation.  Nothing is cached in columns, because the columns would
+ * be as big as the data.
+ * @author Tobin
+ * @version 1
+ */
+public class StreamingFitness implements GenerationFitness
+{
+    /**
+     * 1048576 points, which is 8 MB for each column.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int DEFAULT_READ_AHEAD = 2;
+    private static final double NO_COLUMNS[][] = new double[0][];
+
+    private final Data data;
+    private final Node equation;
+    private final VariableMap map;
+    private final EquationKernel kernel;
+    private final double initialRegisters[];
+    private final ExecutorService workers;
+    private final int blockSize, geneCount;
+    private final Block blocks[];
+    /**
+     * The blocks handed to the reader, and the blocks it has read.
+     */
+    private final ArrayBlockingQueue<Block> free, full;
+    private Thread reader;
+    /**
+     * The registers of each thread, which are reused for every genome and
+     * chunk the thread scores.  The kernels only read them.
+     */
+    private final ThreadLocal<double[]> registers = new ThreadLocal<double[]>()
+    {
+        protected double[] initialValue()
+        {
+            return initialRegisters.clone();
+        }
+    };
+    /**
+     * Makes a new streaming fitness function.  A kernel is generated for the
+     * equation if it can be, and otherwise the tree is evaluated.
+     * @param equation The equation to fit to the data, which must not have any
+     * columns in it
+     * @param data The data used to evaluate each genome
+     * @param map The variable map containing the constants used by the
+     * equation
+     * @param fastMath If the kernel should use the approximations in FastMath
+     * @param workers The threads to score the chunks of each block on, or
+     * null to score them on the calling thread
+     * @param blockSize The number of points in a block, which is rounded up to
+     * a multiple of <tt>ChunkedFitness.CHUNK_SIZE</tt>
+     * @param readAhead The number of blocks the reader can get ahead
+     * @throws IllegalArgumentException if the block size or read ahead is not
+     * positive
+     */
+    public StreamingFitness(Node equation, Data data, VariableMap map, boolean fastMath, ExecutorService workers,
+            int blockSize, int readAhead)
+    {
+        if(blockSize <= 0 || readAhead <= 0)
+        {
+            throw new IllegalArgumentException("Bad block size or read ahead: "+blockSize+", "+readAhead);
+        }
+        this.data = data;
+        this.equation = equation;
+        this.map = map;
+        this.workers = workers;
+        this.blockSize = (int)Math.min(Integer.MAX_VALUE - ChunkedFitness.CHUNK_SIZE + 1,
+                (blockSize + ChunkedFitness.CHUNK_SIZE - 1L) / ChunkedFitness.CHUNK_SIZE * ChunkedFitness.CHUNK_SIZE);
+        kernel = makeKernel(equation, fastMath);
+        initialRegisters = map.newRegisters();
+        geneCount = initialRegisters.length - VariableMap.FIRST_PARAMETER_SLOT;
+
+        int capacity = Math.min(this.blockSize, data.size());
+        blocks = new Block[readAhead + 1];
+        free = new ArrayBlockingQueue<Block>(blocks.length);
+        full = new ArrayBlockingQueue<Block>(blocks.length);
+        for (int i = 0; i < blocks.length; i++)
+        {
+            blocks[i] = new Block(data.getInputCount(), map.getInputCount(), capacity);
+        }
+    }
+    /**
+     * Generates a kernel for the equation.
+     * @return The kernel, or null if the equation could not be compiled or
+     * the kernel could not be generated
+     */
+    private static EquationKernel makeKernel(Node equation, boolean fastMath)
+    {
+        try
+        {
+            return KernelGenerator.generate(EquationProgram.compile(equation), fastMath);
+        }
+        catch(IllegalArgumentException iae)
+        {
+            System.out.println("Could not compile equation, evaluating the tree: "+iae.getMessage());
+        }
+        catch(IllegalStateException ise)
+        {
+            System.out.println("Could not generate kernel, evaluating the tree: "+ise.getMessage());
+        }
+        return null;
+    }
+
+    public double calculateFitness(double genes[], int offset)
+    {
+        return calculateFitness(genes, offset, 0, size());
+    }
+
+    public double calculateFitness(double genes[], int offset, int start, int end)
+    {
+        double genome[] = new double[geneCount];
+        System.arraycopy(genes, offset, genome, 0, geneCount);
+        return stream(genome, 0, 1, start, end)[0];
+    }
+
+    public void calculateFitness(double genes[], int geneCount, int first, int count, double fitness[])
+    {
+        if(geneCount != this.geneCount)
+        {
+            throw new IllegalArgumentException("Expected "+this.geneCount+" genes, not "+geneCount);
+        }
+        System.arraycopy(stream(genes, first, count, 0, size()), 0, fitness, first, count);
+    }
+
+    public int size()
+    {
+        return data.size();
+    }
+    /**
+     * Stops the reader thread.  It is started again if the fitness function
+     * is used after this.
+     */
+    public synchronized void close()
+    {
+        if(reader != null)
+        {
+            reader.interrupt();
+            reader = null;
+        }
+    }
+    /**
+     * Streams a range of the data through the blocks once, and scores every
+     * row on each block.  Only one pass can use the blocks at a time.
+     * @throws IllegalStateException if the data could not be read, a worker
+     * failed, or the thread was interrupted
+     */
+    private synchronized double[] stream(double genes[], int first, int count, int start, int end)
+    {
+        double error[] = new double[count];
+        if(reader == null)
+        {
+            reader = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    read();
+                }
+            }, "Data Reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        int requested = start, outstanding = 0;
+        for (int i = 0; i < blocks.length && requested < end; i++)
+        {
+            request(blocks[i], requested, nextBlock(requested, end));
+            requested = nextBlock(requested, end);
+            outstanding++;
+        }
+        boolean done = false;
+        try
+        {
+            for (int from = start; from < end; from = nextBlock(from, end))
+            {
+                Block block = full.take();
+                outstanding--;
+                if(block.error != null)
+                {
+                    throw new IllegalStateException("Could not read the data: "+block.error, block.error);
+                }
+                score(genes, first, block, error);
+                if(requested < end)
+                {
+                    request(block, requested, nextBlock(requested, end));
+                    requested = nextBlock(requested, end);
+                    outstanding++;
+                }
+            }
+            done = true;
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the data");
+        }
+        finally
+        {
+            if(!done)
+            {
+                reset(outstanding);
+            }
+        }
+        return error;
+    }
+    /**
+     * Hands a block to the reader to fill with a range of the data.
+     */
+    private void request(Block block, int start, int end)
+    {
+        block.start = start;
+        block.end = end;
+        free.add(block);
+    }
+    /**
+     * Fills the blocks in the free queue with the range each was given, and
+     * puts them in the full queue, until the thread is interrupted.  This runs
+     * on the reader thread.
+     */
+    private void read()
+    {
+        while(true)
+        {
+            Block block;
+            try
+            {
+                block = free.take();
+            }
+            catch(InterruptedException ie)
+            {
+                //closed
+                return;
+            }
+            block.read(data);
+            full.add(block);
+        }
+    }
+    /**
+     * Gets back every block that was handed to the reader after a pass
+     * failed, so the next pass starts with all of them.  The blocks the
+     * reader has not started are taken out of the free queue, and the rest
+     * are waited for.
+     * @param outstanding The number of blocks handed to the reader and not
+     * yet taken back
+     */
+    private void reset(int outstanding)
+    {
+        while(free.poll() != null)
+        {
+            outstanding--;
+        }
+        boolean interrupted = false;
+        while(outstanding > 0)
+        {
+            try
+            {
+                full.take();
+                outstanding--;
+            }
+            catch(InterruptedException ie)
+            {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    /**
+     * Adds the fitness of each genome over one block to its total, a chunk at
+     * a time, on the workers if there are any.
+     */
+    private void score(final double genes[], final int first, final Block block, final double error[])
+    {
+        if(workers == null || block.end - block.start <= ChunkedFitness.CHUNK_SIZE)
+        {
+            for (int from = block.start; from < block.end; from = ChunkedFitness.nextChunk(from, block.end))
+            {
+                addChunk(genes, first, block, from, ChunkedFitness.nextChunk(from, block.end), error);
+            }
+            return;
+        }
+
+        ArrayList<Future<double[]>> chunks = new ArrayList<Future<double[]>>();
+        for (int from = block.start; from < block.end; from = ChunkedFitness.nextChunk(from, block.end))
+        {
+            final int chunkStart = from, chunkEnd = ChunkedFitness.nextChunk(from, block.end);
+            chunks.add(workers.submit(new Callable<double[]>()
+            {
+                public double[] call()
+                {
+                    double out[] = new double[error.length];
+                    addChunk(genes, first, block, chunkStart, chunkEnd, out);
+                    return out;
+                }
+            }));
+        }
+
+        try
+        {
+            for(Future<double[]> chunk : chunks)
+            {
+                double chunkError[] = chunk.get();
+                for (int i = 0; i < error.length; i++)
+                {
+                    error[i] += chunkError[i];
+                }
+            }
+        }
+        catch(InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the workers");
+        }
+        catch(ExecutionException ee)
+        {
+            throw new IllegalStateException("A worker failed: "+ee.getCause(), ee.getCause());
+        }
+    }
+    /**
+     * Adds the fitness of each genome over one chunk of a block to its total.
+     */
+    private void addChunk(double genes[], int first, Block block, int start, int end, double error[])
+    {
+        for (int i = 0; i < error.length; i++)
+        {
+            error[i] += calculateFitness(genes, (first + i) * geneCount, block, start - block.start, end - block.start);
+        }
+    }
+    /**
+     * Calculates the fitness of a genome over a range of a block, with the
+     * kernel if there is one, and otherwise by evaluating the tree like
+     * BatchFitness.
+     */
+    private double calculateFitness(double genes[], int offset, Block block, int start, int end)
+    {
+        if(kernel != null)
+        {
+            double registers[] = this.registers.get();
+            System.arraycopy(genes, offset, registers, VariableMap.FIRST_PARAMETER_SLOT, geneCount);
+            return kernel.sumSquaredError(registers, NO_COLUMNS, block.inputs, block.y, start, end);
+        }
+
+        EvaluationContext context = map.newContext();
+        for (int i = 0; i < geneCount; i++)
+        {
+            context.setRegister(VariableMap.FIRST_PARAMETER_SLOT + i, genes[offset + i]);
+        }
+        double values[] = new double[BatchFitness.BLOCK_SIZE];
+        double error = 0;
+        for (int from = start; from < end; from += BatchFitness.BLOCK_SIZE)
+        {
+            int length = Math.min(BatchFitness.BLOCK_SIZE, end - from);
+            equation.evaluate(context, block.inputs, from, length, values);
+            error += BlockOperations.sumSquaredError(block.y, from, values, length);
+        }
+        return error;
+    }
+    /**
+     * Gets the index after the end of the block that starts at the given
+     * index.
+     */
+    private int nextBlock(int from, int end)
+    {
+        return (int)Math.min(end, (from / blockSize + 1L) * blockSize);
+    }
+
+    /**
+     * One block of the data, copied into the heap.  Only the inputs the
+     * equation uses are read.  The range is set before the block is handed
+     * to the reader, and the error is set by the reader if it failed.
+     */
+    private static class Block
+    {
+        private final double inputs[][], y[];
+        private int start, end;
+        private RuntimeException error;
+
+        private Block(int inputCount, int usedInputs, int capacity)
+        {
+            inputs = new double[inputCount][];
+            for (int i = 0; i < usedInputs; i++)
+            {
+                inputs[i] = new double[capacity];
+            }
+            y = new double[capacity];
+        }
+        /**
+         * Copies the range of the data this block was given into it.
+         */
+        private void read(Data data)
+        {
+            error = null;
+            try
+            {
+                for (int i = 0; i < inputs.length; i++)
+                {
+                    if(inputs[i] != null)
+                    {
+                        data.getInput(i, start, end - start, inputs[i]);
+                    }
+                }
+                data.getY(start, end - start, y);
+            }
+            catch(RuntimeException re)
+            {
+                error = re;
+            }
+        }
+    }
+}
@@ -1,132 +1,196 @@
 package tobin.genetic;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Set;
+import tobin.equation.EvaluationContext;
 
 /**
  * The map that stores all of the information about the variables used in the
- * algorithm.  All of the information about the variables is stored in a hash
- * map of strings and doubles.  The strings are the variable names, and the
- * doubles are their current values.
+ * algorithm.  Each variable is given a slot when it is first added, and its
+ * starting value is stored at that slot in an array of doubles called the
+ * registers.  The parser resolves every variable in the equation to its slot,
+ * so evaluating the equation only reads from the array, and the names are
+ * only looked up when the equation is parsed.<br>
+ * The map is not used while the equation is evaluated.  Each evaluation gets
+ * its own copy of the registers in an <tt>EvaluationContext</tt>, so the
+ * equation can be evaluated by many threads at once.<br>
+ * Pi and e always have the first two slots.  The variables that the
+ * algorithm changes to fit the equation come after them, in the order they
+ * were added.<br>
+ * The inputs, x1, x2, and so on, do not have slots, because they are read
+ * straight from the columns of the data.  The map only keeps track of how
+ * many input columns the equation needs.
  * @author Tobin
  * @version 1
  */
 public class VariableMap
 {
-    private HashMap<String, Double> map;
+    public static final int PI_SLOT = 0, E_SLOT = 1, FIRST_PARAMETER_SLOT = 2;
+
+    private HashMap<String, Integer> slots;
+    private ArrayList<String> names;
+    private double registers[];
+    private int inputCount = 0;
 
     /**
-     * Makes a new variable map with an initial capacity of 16, and the pi and
-     * e associations.
+     * Makes a new variable map with the pi and e slots.
      */
     public VariableMap()
     {
-        map = new HashMap<String, Double>();
+        slots = new HashMap<String, Integer>();
+        names = new ArrayList<String>();
+        registers = new double[8];
 
-        map.put("pi", Math.PI);
-        map.put("e", Math.E);
+        addVariable("pi");
+        addVariable("e");
+        registers[PI_SLOT] = Math.PI;
+        registers[E_SLOT] = Math.E;
 
 //	System.out.println(this);
     }
     /**
      * Associates the specified value with the specified key in this map.
      * If the map previously contained a mapping for the key, the old
-     * value is replaced, unless the key is pi or e.
+     * value is replaced.  The key must already be in the map.
      * @param k key with which the specified value is to be associated
      * @param value value to be associated with the specified key
      */
     public void setVariable(String k, double value)
     {
-        if(k.equalsIgnoreCase("pi") || k.equalsIgnoreCase("e"))
-        {
-            map.get(k.toLowerCase());
-        }
-        map.put(k.toLowerCase(), value);
+        registers[getSlot(k)] = value;
 //        System.out.println("key: "+k+", value: "+value+", old value: ");
     }
     /**
-     * Returns a list of all of the variables stored in the map.
+     * Returns a list of all of the variables stored in the map, in slot
+     * order.
      * @return the list of variables as strings.
      */
     public String[] getAllVariables()
     {
-        Set<String> set = map.keySet();
-        return set.toArray(new String[0]);
+        return names.toArray(new String[0]);
     }
     /**
      * Gets all of the variables that should be modified during the algorithm
      * to find the solution.  This is the list of all of the variables in the
-     * map except pi, e, and x.
+     * map except pi and e, in slot order, so the variable at index i is in
+     * slot FIRST_PARAMETER_SLOT + i.
      * @return An array of strings containing all of the keys to the variables
      * that should be modified.
      */
-    public String[] getVariables()//assumes that the map does not change
+    public String[] getVariables()
     {
-        Set<String> set = map.keySet();
-	Iterator<String> iterator = set.iterator();
-
-	String out[] = new String[set.size() - 3];
-	String reject = "[Xx]|[Ee]|[Pp][Ii]";
-
-	for (int i = 0; i < out.length; i++)
-	{
-	    String j = iterator.next();
-	    if(!j.matches(reject))
-	    {
-		out[i] = j;
-	    }
-	    else
-	    {
-		i--;
-	    }
-	}
-
-        return out;
+        return names.subList(FIRST_PARAMETER_SLOT, names.size()).toArray(new String[0]);
     }
     /**
-     * Returns the value to which the specified key is mapped,
-     * or {@code null} if this map contains no mapping for the key.
-     *
-     * <p>More formally, if this map contains a mapping from a key
-     * {@code k} to a value {@code v} such that {@code (key==null ? k==null :
-     * key.equals(k))}, then this method returns {@code v}; otherwise
-     * it returns {@code null}.  (There can be at most one such mapping.)
-     *
-     * <p>A return value of {@code null} does not <i>necessarily</i>
-     * indicate that the map contains no mapping for the key; it's also
-     * possible that the map explicitly maps the key to {@code null}.
-     * The {@link #containsKey containsKey} operation may be used to
-     * distinguish these two cases.
-     *
+     * Returns the value to which the specified key is mapped.
      * @param k The key to return the value of.
      * @return The value at that location.
+     * @throws IllegalArgumentException if the key is not in the map
      */
     public double getVariable(String k)
     {
 //	System.out.println(map);
-        return map.get(k.toLowerCase());
+        return registers[getSlot(k)];
+    }
+    /**
+     * Gets the slot of the given variable.
+     * @param k The name of the variable.  This is not case sensitive.
+     * @return The slot
+     * @throws IllegalArgumentException if the key is not in the map
+     */
+    public int getSlot(String k)
+    {
+        Integer slot = slots.get(k.toLowerCase());
+        if(slot == null)
+        {
+            throw new IllegalArgumentException("Unknown variable: "+k);
+        }
+        return slot;
+    }
+    /**
+     * Gets a copy of the current value of every variable, indexed by slot.
+     * @return The copy of the registers
+     */
+    public double[] newRegisters()
+    {
+        double out[] = new double[names.size()];
+        System.arraycopy(registers, 0, out, 0, out.length);
+        return out;
     }
     /**
-     * The string representation of the map.  This is the same as
-     * map.toString();
+     * Makes a new context to evaluate an equation in, with a copy of the
+     * current value of every variable.
+     * @return The new context
+     */
+    public EvaluationContext newContext()
+    {
+        return new EvaluationContext(newRegisters());
+    }
+    /**
+     * Gets the number of slots in use, which is the number of variables
+     * including pi and e.
+     * @return The number of slots
+     */
+    public int size()
+    {
+        return names.size();
+    }
+    /**
+     * The string representation of the map, with each variable and its
+     * current value.
      * @return
      */
     public String toString()
     {
-        return map.toString();
+        String out = "{";
+        for (int i = 0; i < names.size(); i++)
+        {
+            out += (i == 0 ? "" : ", ") + names.get(i) + "=" + registers[i];
+        }
+        return out + "}";
     }
     /**
      * Adds the specified key to the map if it does not already exist on the
      * map.  The initial value for the new key is 0.0.
      * @param key The key to add to the map.
+     * @return The slot of the variable
      */
-    public void addVariable(String key)
+    public int addVariable(String key)
     {
-        if(!map.containsKey(key))
+        key = key.toLowerCase();
+        Integer slot = slots.get(key);
+        if(slot == null)
         {
-            map.put(key.toLowerCase(), 0.0);
+            slot = names.size();
+            if(slot == registers.length)
+            {
+                double grown[] = new double[registers.length * 2];
+                System.arraycopy(registers, 0, grown, 0, registers.length);
+                registers = grown;
+            }
+            slots.put(key, slot);
+            names.add(key);
         }
 //	System.out.println(this);
+        return slot;
+    }
+    /**
+     * Records that the equation reads the given input column.
+     * @param column The index of the column, starting at 0 for x1
+     * @return The column
+     */
+    public int addInput(int column)
+    {
+        inputCount = Math.max(inputCount, column + 1);
+        return column;
+    }
+    /**
+     * Gets the number of input columns the equation needs, which is one more
+     * than the highest one it reads.  An equation that only uses x needs one.
+     * @return The number of input columns
+     */
+    public int getInputCount()
+    {
+        return inputCount;
     }
-}
\ No newline at end of file
+}
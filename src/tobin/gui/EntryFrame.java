@@ -29,8 +29,11 @@ import tobin.equation.EquationPiece;
 import tobin.equation.Node;
 import tobin.equation.PartialEquation;
 import tobin.genetic.Data;
+import tobin.genetic.DataFile;
 import tobin.genetic.Genetic;
+import tobin.genetic.GeneticConfig;
 import tobin.genetic.Guess;
+import tobin.genetic.IslandModel;
 import tobin.genetic.VariableMap;
 
 /**
@@ -51,8 +54,9 @@ public class EntryFrame extends JFrame implements ActionListener
             "multiplied.  No part of the equation is case sensative, and all "+
             "white space is ignored.  Allowed constants are PI, and E.  The "+
             "variables that the program will change to fit the equation to the"+
-            " data are preceded by a $, and the independent variable is always"+
-            " x.  An example of an equation would be \"$a*x^2 + $b*x + $c\".  "+
+            " data are preceded by a $, and the independent variables are x1, "+
+            "x2, and so on, or just x if there is only one.  An example of an "+
+            "equation would be \"$a*x^2 + $b*x + $c\".  "+
             "Allowed unary operators are sin, cos, tan, arcsin, arccos, arctan"+
             ", abs, ln, and log.  They are notated by simply typing out the "+
             "function followed by a set of parentheses.  An example of an "+
@@ -60,12 +64,16 @@ public class EntryFrame extends JFrame implements ActionListener
             ") + $d\", and one with constants would be \"$a * e^($b*x - $c) + "+
             "$d\".\n\tThe data file that the program reads to obtain the "+
             "points to fit the equation to must be either tab or comma "+
-            "delimeted, and must be two columns.  The first column is the x "+
-            "position of each point, and the second column is they y location "+
-            "for that x location.  The data for one point should be stored on "+
+            "delimeted, and must have at least two columns.  The last column is "+
+            "the y location of each point, and the columns before it are the "+
+            "inputs, which are x1, x2, and so on in the equation.  With only "+
+            "one input it is just x.  The data for one point should be stored on "+
             "each line.  An example of an acceptable text file is as follows:"+
             "\n1\t1.0\n2\t3.9\n3\t9.4\n4\t15.8\nIf the file is in any other "+
-            "format the program will prompt you to fix it.";
+            "format the program will prompt you to fix it.  Large text files "+
+            "can be converted to the binary .gdat format, which opens "+
+            "instantly, with \"java tobin.genetic.DataFile data.txt "+
+            "data.gdat\".";
     private static final long serialVersionUID = 1L;
     private static final Color goodColor = new Color(80, 250, 80),
                                badColor = new Color(250, 80, 80);
@@ -77,13 +85,25 @@ public class EntryFrame extends JFrame implements ActionListener
     private boolean equationGood = false, dataGood = false;
 
     private File dataFile = new File(".");
+    private GeneticConfig config;
     /**
      * Constructs a new Entry Frame, with all fields and buttons, but does not
-     * set it visible.
+     * set it visible.  The genetic algorithm uses the default settings.
      */
     public EntryFrame()
+    {
+        this(new GeneticConfig());
+    }
+    /**
+     * Constructs a new Entry Frame, with all fields and buttons, but does not
+     * set it visible.
+     * @param config The settings to load the data and run the genetic
+     * algorithm with
+     */
+    public EntryFrame(GeneticConfig config)
     {
         super("Regressions");
+        this.config = config;
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 //        setResizable(false);
         setLayout(new GridLayout(3, 1));
@@ -169,20 +189,63 @@ public class EntryFrame extends JFrame implements ActionListener
 		     * the file.  If there is and error an error message is
 		     * displayed and the user is returned to this frame.
 		     */
-                    Data d = new Data(dataFile);
+                    Data d = DataFile.load(dataFile, config);
+                    if(v.getInputCount() > d.getInputCount())
+                    {
+                        showError("The equation uses x"+v.getInputCount()+", but the data file\nonly has "+
+                                d.getInputCount()+" input columns.");
+                        d.release();
+                        dataField.requestFocus();
+                        return;
+                    }
 		    System.out.println(v);
 
                     String keys[] = v.getVariables();
+                    try
+                    {
+                        config.checkCapacity(keys.length);
+                    }
+                    catch(IllegalArgumentException iae)
+                    {
+                        showError(iae.getMessage());
+                        d.release();
+                        return;
+                    }
 		    System.out.println(v);
                     Guess g = GuessFrame.getGuess(keys);
 		    System.out.println(v);
                     if(g == null)
                     {
+                        d.release();
                         return;
                     }
 
-                    Genetic re = new Genetic(d, equation, v, g, "Status", "null");
-                    Thread t = new Thread(re, "Genetic Evaluator");
+                    final Runnable re;
+                    if(config.getIslands() > 1)
+                    {
+                        re = new IslandModel(d, equation, v, g, "Status", "null", config);
+                    }
+                    else
+                    {
+                        re = new Genetic(d, equation, v, g, "Status", "null", config);
+                    }
+                    //the data was loaded here, so it is released here, once
+                    //the run is over and the result has been shown
+                    final Data data = d;
+                    Thread t = new Thread(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                re.run();
+                            }
+                            finally
+                            {
+                                data.release();
+                            }
+                        }
+                    }, "Genetic Evaluator");
                     t.start();
                     dispose();
                     System.out.println("EntryFrame disposed");
@@ -253,13 +316,13 @@ public class EntryFrame extends JFrame implements ActionListener
                 @Override
                 public boolean accept(File f)
                 {
-                    return f.getAbsolutePath().matches(".*.[Tt][Xx][Tt]") || f.isDirectory();
+                    return f.getAbsolutePath().matches(".*.([Tt][Xx][Tt]|[Gg][Dd][Aa][Tt])") || f.isDirectory();
                 }
 
                 @Override
                 public String getDescription()
                 {
-                    return "Text Files (*.txt)";
+                    return "Data Files (*.txt, *.gdat)";
                 }
             });
             chooser.setCurrentDirectory(dataFile);
@@ -385,8 +448,8 @@ public class EntryFrame extends JFrame implements ActionListener
             return true;
         }
         /**
-         * Tests if the file exists and if it is a .txt file if the component
-         * is the data field.
+         * Tests if the file exists and if it is a .txt or .gdat file if the
+         * component is the data field.
          * @param input The component to test.
          * @return If the data entered is valid.
          */
@@ -397,7 +460,7 @@ public class EntryFrame extends JFrame implements ActionListener
                 try
                 {
                     File f = new File(dataField.getText());
-                    return f.exists() && f.getName().matches(".*.[tT][xX][tT]");
+                    return f.exists() && f.getName().matches(".*.([tT][xX][tT]|[gG][dD][aA][tT])");
                 }
                 catch(Exception e)
                 {
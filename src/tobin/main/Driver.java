@@ -1,11 +1,16 @@
 package tobin.main;
 
+import java.io.IOException;
+import tobin.genetic.GeneticConfig;
 import tobin.gui.EntryFrame;
 
 /**
  * The main class of the program.  This class makes an instance of the entry
  * frame, and sets it visible, starting the AWT thread which deals with the rest
- * of the program.
+ * of the program.<br>
+ * The settings of the genetic algorithm can be given on the command line as
+ * <tt>--name=value</tt>, or in a properties file with <tt>--config=file</tt>,
+ * as described in <tt>GeneticConfig</tt>.
  * @author Tobin
  */
 public class Driver
@@ -27,12 +32,31 @@ public class Driver
     /**
      * Makes an instance of the entry frame, and sets it visible, starting the
      * AWT thread which deals with the rest of the program.
-     * @param args The command line arguments
+     * @param args The command line arguments, which are settings of the
+     * genetic algorithm
      */
     public static void main(String[] args)
     {
+        GeneticConfig config = null;
+        try
+        {
+            config = new GeneticConfig();
+            config.parseArguments(args);
+        }
+        catch(IOException ioe)
+        {
+            System.out.println("Could not read the config: "+ioe.getMessage());
+            System.exit(1);
+        }
+        catch(IllegalArgumentException iae)
+        {
+            System.out.println(iae.getMessage());
+            System.out.println("Usage: java tobin.main.Driver [--config=file] [--name=value]...");
+            System.exit(1);
+        }
+
         EntryFrame.setBestLAF();
-        EntryFrame f = new EntryFrame();
+        EntryFrame f = new EntryFrame(config);
         f.setVisible(true);
     }
 }
\ No newline at end of file
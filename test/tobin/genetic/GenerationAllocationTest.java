@@ -0,0 +1,79 @@
+package tobin.genetic;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import tobin.equation.EquationPiece;
+import tobin.equation.Node;
+import tobin.equation.PartialEquation;
+
+/**
+ * Checks that making a new generation does not allocate anything once the
+ * run has warmed up, when the children are made on the calling thread.  The
+ * bytes are counted with the allocation counter of the thread, which is in
+ * the HotSpot ThreadMXBean, so the test does nothing on a JVM without it.
+ * @author Tobin
+ * @version 1
+ */
+public class GenerationAllocationTest
+{
+    private static final int WARM_UP = 100, GENERATIONS = 200, ROUNDS = 10;
+
+    @Test
+    public void testPooledGenerationDoesNotAllocate()
+    {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+        {
+            return;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if(!bean.isThreadAllocatedMemorySupported())
+        {
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        double x[] = new double[1000], y[] = new double[1000];
+        for (int i = 0; i < x.length; i++)
+        {
+            x[i] = i / 100.0;
+            y[i] = 3 * x[i] * x[i] - 2 * x[i] + 1;
+        }
+        VariableMap v = new VariableMap();
+        Node equation = Node.parseEquation(new PartialEquation(new EquationPiece("$a*x^2+$b*x+$c")), v);
+        String keys[] = v.getVariables();
+        KeyValue genome[] = new KeyValue[keys.length];
+        double deviations[] = new double[keys.length];
+        for (int i = 0; i < keys.length; i++)
+        {
+            genome[i] = new KeyValue(keys[i], 1);
+            deviations[i] = 1;
+        }
+        GeneticConfig config = new GeneticConfig();
+        config.setThreads(1);
+        config.setSeed(Long.valueOf(42));
+        Genetic genetic = new Genetic(new Data(x, y), equation, v, new Guess(genome, deviations), config);
+
+        for (int i = 0; i < WARM_UP; i++)
+        {
+            genetic.makeNewGeneration();
+            genetic.trimPopulation();
+        }
+        //the JIT can allocate a little on this thread while it is still
+        //compiling, so a few rounds are measured, and the least is checked.
+        //Anything a generation allocates shows up in every round.
+        long id = Thread.currentThread().getId();
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS && least > 0; round++)
+        {
+            long before = bean.getThreadAllocatedBytes(id);
+            for (int i = 0; i < GENERATIONS; i++)
+            {
+                genetic.makeNewGeneration();
+                genetic.trimPopulation();
+            }
+            least = Math.min(least, bean.getThreadAllocatedBytes(id) - before);
+        }
+        assertEquals("Bytes allocated in " + GENERATIONS + " generations", 0, least);
+    }
+}